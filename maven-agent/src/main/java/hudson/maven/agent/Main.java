@@ -25,9 +25,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.Socket;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
 
 import org.codehaus.classworlds.ClassRealm;
 import org.codehaus.classworlds.ClassWorld;
@@ -51,6 +48,12 @@ public class Main {
      */
     private static Launcher launcher;
 
+    /**
+     * Plugin realms kept between launches. Created on the first launch,
+     * so that it knows which realms are the built-in ones.
+     */
+    private static RealmCache realmCache;
+
     public static void main(String[] args) throws Exception {
         main(new File(args[0]),new File(args[1]),new File(args[2]),Integer.parseInt(args[3]),
                 args.length==4?null:new File(args[4]));
@@ -160,22 +163,16 @@ public class Main {
         //ClassWorld world = ClassWorldAdapter.getInstance( launcher.getWorld() );
 
         ClassWorld world = launcher.getWorld();
-        
-        Set builtinRealms = new HashSet(world.getRealms());
+
+        if(realmCache==null)
+            realmCache = new RealmCache(world);
+
+        realmCache.beforeLaunch();
         try {
             launcher.launch(args);
         } finally {
-            // delete all realms created by Maven
-            // this is because Maven creates a child realm for each plugin it loads,
-            // and the realm id doesn't include the version.
-            // so unless we discard all the realms multiple invocations
-            // that use different versions of the same plugin will fail to work correctly.
-            Set all = new HashSet(world.getRealms());
-            all.removeAll(builtinRealms);
-            for (Iterator itr = all.iterator(); itr.hasNext();) {
-                ClassRealm cr = (ClassRealm) itr.next();
-                world.disposeRealm(cr.getId());
-            }
+            // dispose the realms created by Maven, except for the plugin realms we can safely keep
+            realmCache.afterLaunch();
         }
         return launcher.getExitCode();
     }
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven.agent;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.classworlds.ClassRealm;
+import org.codehaus.classworlds.ClassWorld;
+import org.codehaus.classworlds.NoSuchRealmException;
+
+/**
+ * Keeps the plugin realms that Maven created during one launch alive for the next launch
+ * in the same JVM, so that the plugin classes don't have to be loaded and linked again.
+ *
+ * <p>
+ * Maven looks up the realm of a plugin by its id before creating a new one.
+ * A realm is therefore only kept if its id carries the plugin version
+ * (groupId:artifactId:version), and only as long as it has exactly the same jars,
+ * with the same size and timestamp, as when it was first cached. Everything else
+ * is disposed after each launch, which is also what happens to all the realms
+ * when the cache is disabled.
+ *
+ * <p>
+ * This code is compiled with source level 1.2, so no generics here.
+ */
+final class RealmCache {
+    private final ClassWorld world;
+
+    /**
+     * Ids of the realms that existed before Maven ever ran. These are never disposed.
+     */
+    private final Set builtinRealms = new HashSet();
+
+    /**
+     * Realm id to {@link Entry}, oldest first.
+     */
+    private final Map entries = new LinkedHashMap();
+
+    RealmCache(ClassWorld world) {
+        this.world = world;
+        for (Iterator itr = world.getRealms().iterator(); itr.hasNext();)
+            builtinRealms.add(((ClassRealm) itr.next()).getId());
+    }
+
+    private static final class Entry {
+        final String signature;
+        final long size;
+
+        Entry(String signature, long size) {
+            this.signature = signature;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Drops the cached realms whose jars have changed on disk since the last launch,
+     * for example because a snapshot plugin got re-installed.
+     */
+    void beforeLaunch() {
+        for (Iterator itr = entries.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry e = (Map.Entry) itr.next();
+            String id = (String) e.getKey();
+            try {
+                ClassRealm cr = world.getRealm(id);
+                if (signature(cr).equals(((Entry) e.getValue()).signature))
+                    continue;
+            } catch (NoSuchRealmException x) {
+                // already gone
+            }
+            itr.remove();
+            dispose(id);
+        }
+    }
+
+    /**
+     * Decides which of the realms created by Maven survive until the next launch.
+     */
+    void afterLaunch() {
+        List all = new ArrayList(world.getRealms());
+        for (Iterator itr = all.iterator(); itr.hasNext();) {
+            ClassRealm cr = (ClassRealm) itr.next();
+            String id = cr.getId();
+            if (builtinRealms.contains(id))
+                continue;
+
+            if (!ENABLED || getVersionedKey(id) == null) {
+                // Maven creates a child realm for each plugin it loads,
+                // and the realm id doesn't necessarily include the version.
+                // so unless we discard these realms multiple invocations
+                // that use different versions of the same plugin will fail to work correctly.
+                dispose(id);
+                continue;
+            }
+
+            String signature = signature(cr);
+            Entry e = (Entry) entries.get(id);
+            if (e == null) {
+                entries.put(id, new Entry(signature, size(cr)));
+            } else if (!e.signature.equals(signature)) {
+                // this launch added different jars to a realm from an earlier launch,
+                // for example plugin dependencies overridden by the project. Don't trust it any more.
+                entries.remove(id);
+                dispose(id);
+            }
+        }
+
+        // stay within the budget, evicting the oldest realms first
+        long total = 0;
+        for (Iterator itr = entries.values().iterator(); itr.hasNext();)
+            total += ((Entry) itr.next()).size;
+        for (Iterator itr = entries.entrySet().iterator(); itr.hasNext();) {
+            if (total <= BUDGET && entries.size() <= MAX_REALMS)
+                break;
+            Map.Entry e = (Map.Entry) itr.next();
+            total -= ((Entry) e.getValue()).size;
+            itr.remove();
+            dispose((String) e.getKey());
+        }
+    }
+
+    private void dispose(String id) {
+        try {
+            world.disposeRealm(id);
+        } catch (NoSuchRealmException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * Extracts "groupId:artifactId:version" from the realm id,
+     * or returns null if the id doesn't carry a version.
+     */
+    static String getVersionedKey(String realmId) {
+        String key = realmId;
+        int idx = key.lastIndexOf('[');
+        if (idx >= 0 && key.endsWith("]"))
+            key = key.substring(idx + 1, key.length() - 1);
+
+        int first = key.indexOf(':');
+        if (first <= 0)
+            return null;
+        int second = key.indexOf(':', first + 1);
+        if (second < 0 || second == key.length() - 1)
+            return null;
+        return key;
+    }
+
+    /**
+     * Identifies the jars of a realm, including their size and timestamp.
+     */
+    private static String signature(ClassRealm cr) {
+        URL[] urls = cr.getConstituents();
+        String[] parts = new String[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            String s = urls[i].toExternalForm();
+            File f = toFile(urls[i]);
+            if (f != null)
+                s += "|" + f.length() + "|" + f.lastModified();
+            parts[i] = s;
+        }
+        Arrays.sort(parts);
+
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < parts.length; i++)
+            buf.append(parts[i]).append('\n');
+        return buf.toString();
+    }
+
+    /**
+     * Approximates the footprint of a realm by the size of its jars.
+     */
+    private static long size(ClassRealm cr) {
+        URL[] urls = cr.getConstituents();
+        long size = 0;
+        for (int i = 0; i < urls.length; i++) {
+            File f = toFile(urls[i]);
+            if (f != null)
+                size += f.length();
+        }
+        return size;
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol()))
+            return null;
+        return new File(url.getFile());
+    }
+
+    private static final String PREFIX = RealmCache.class.getName();
+
+    /**
+     * Set to true to keep plugin realms between launches.
+     */
+    public static boolean ENABLED = Boolean.getBoolean(PREFIX);
+
+    /**
+     * Total size of the jars, in bytes, that the cached realms may hold.
+     */
+    public static long BUDGET = Integer.getInteger(PREFIX + ".budget", 64).intValue() * 1024L * 1024L;
+
+    /**
+     * Maximum number of cached realms.
+     */
+    public static int MAX_REALMS = Integer.getInteger(PREFIX + ".maxRealms", 100).intValue();
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven.agent;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks which realm ids {@link RealmCache} considers to carry a plugin version.
+ */
+public class RealmCacheTest extends TestCase {
+    public void testVersionedId() {
+        assertEquals("org.apache.maven.plugins:maven-compiler-plugin:2.0.2",
+                RealmCache.getVersionedKey("org.apache.maven.plugins:maven-compiler-plugin:2.0.2"));
+    }
+
+    public void testBracketedId() {
+        assertEquals("org.apache.maven.plugins:maven-surefire-plugin:2.4.3",
+                RealmCache.getVersionedKey("/plugins/[org.apache.maven.plugins:maven-surefire-plugin:2.4.3]"));
+    }
+
+    public void testUnversionedId() {
+        assertNull(RealmCache.getVersionedKey("org.apache.maven.plugins:maven-compiler-plugin"));
+        assertNull(RealmCache.getVersionedKey("/plugins/[org.apache.maven.plugins:maven-compiler-plugin]"));
+    }
+
+    public void testEmptyVersion() {
+        assertNull(RealmCache.getVersionedKey("org.apache.maven.plugins:maven-compiler-plugin:"));
+    }
+
+    public void testMissingGroupId() {
+        assertNull(RealmCache.getVersionedKey(":maven-compiler-plugin:2.0.2"));
+    }
+
+    public void testBuiltinRealms() {
+        assertNull(RealmCache.getVersionedKey("plexus.core"));
+        assertNull(RealmCache.getVersionedKey("plexus.core.maven"));
+        assertNull(RealmCache.getVersionedKey(""));
+    }
+}
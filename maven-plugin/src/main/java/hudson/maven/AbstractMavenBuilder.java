@@ -23,8 +23,10 @@ import hudson.remoting.DelegatingCallable;
 
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 /**
  * @author Olivier Lamy
@@ -52,6 +54,43 @@ public abstract class AbstractMavenBuilder implements DelegatingCallable<Result,
         this.systemProps = systemProps;
     }
     
+    /**
+     * Brings the system properties of the Maven process back to the state it was in
+     * before the first build, then adds {@link #systemProps}.
+     *
+     * <p>
+     * Maven corrupts the system properties as a side-effect of the build, so this is
+     * needed when the process gets reused. Only the properties that actually differ are
+     * touched, and since this runs as a part of the build, it costs no extra round-trip.
+     * This code is executed inside the maven jail process.
+     */
+    protected void resetSystemProperties() {
+        // working around NPE when someone puts a null value into systemProps.
+        for (Map.Entry<String,String> e : systemProps.entrySet()) {
+            if (e.getValue()==null)
+                throw new IllegalArgumentException("System property "+e.getKey()+" has a null value");
+        }
+
+        synchronized (AbstractMavenBuilder.class) {
+            Properties current = System.getProperties();
+            if (pristineSystemProperties==null) {
+                // first build in this process
+                pristineSystemProperties = new Properties();
+                pristineSystemProperties.putAll(current);
+            } else {
+                for (Object key : new ArrayList<Object>(current.keySet())) {
+                    if (!pristineSystemProperties.containsKey(key) && !systemProps.containsKey(key))
+                        current.remove(key);
+                }
+                for (Map.Entry<Object,Object> e : pristineSystemProperties.entrySet()) {
+                    if (!systemProps.containsKey(e.getKey()) && !e.getValue().equals(current.get(e.getKey())))
+                        current.put(e.getKey(), e.getValue());
+                }
+            }
+            current.putAll(systemProps);
+        }
+    }
+
     protected String formatArgs(List<String> args) {
         StringBuilder buf = new StringBuilder("Executing Maven: ");
         for (String arg : args) {
@@ -69,6 +108,12 @@ public abstract class AbstractMavenBuilder implements DelegatingCallable<Result,
     
 
 
+    /**
+     * System properties of the Maven process as they were before its first build.
+     * Only used inside the maven jail process, where this class is loaded once per process.
+     */
+    private static Properties pristineSystemProperties;
+
     protected String format(NumberFormat n, long nanoTime) {
         return n.format(nanoTime/1000000);
     }
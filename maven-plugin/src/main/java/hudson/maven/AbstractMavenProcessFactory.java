@@ -32,6 +32,7 @@ import hudson.remoting.RemoteInputStream;
 import hudson.remoting.RemoteOutputStream;
 import hudson.remoting.SocketInputStream;
 import hudson.remoting.SocketOutputStream;
+import hudson.remoting.VirtualChannel;
 import hudson.remoting.Which;
 import hudson.slaves.Channels;
 import hudson.tasks.Maven.MavenInstallation;
@@ -40,6 +41,8 @@ import hudson.util.ArgumentListBuilder;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -50,6 +53,11 @@ import java.net.SocketTimeoutException;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import hudson.maven.ProcessCache.NewProcess;
 
@@ -84,20 +92,60 @@ public abstract class AbstractMavenProcessFactory
     private final EnvVars envVars;
 
     /**
-     * Optional working directory. Because of the process reuse, we can't always guarantee
-     * that the returned Maven process has this as the working directory. But for the
-     * aggregator style build, the process reuse is disabled, so in practice this always works.
+     * Optional working directory. {@link ProcessCache} only hands out a cached process
+     * to a factory with the same working directory as the one the process was launched in,
+     * so the returned Maven process always has this as the working directory.
      *
      * Also, Maven is supposed to work correctly regardless of the process current directory,
      * so a good behaving maven project shouldn't rely on the current project.
      */
     private final FilePath workDir;
 
+    /**
+     * Node to launch processes on when we are not running inside a build.
+     * Null to use the node of the current executor.
+     */
+    private final Node node;
+
+    /**
+     * Launch parameters of a process launched outside of a build, when there's no project to take them from.
+     */
+    private final String mavenOpts;
+    private final MavenInstallation installation;
+    private final JDK jdk;
+
     AbstractMavenProcessFactory(MavenModuleSet mms, Launcher launcher, EnvVars envVars, FilePath workDir) {
+        this(mms, launcher, envVars, workDir, null);
+    }
+
+    AbstractMavenProcessFactory(MavenModuleSet mms, Launcher launcher, EnvVars envVars, FilePath workDir, Node node) {
         this.mms = mms;
         this.launcher = launcher;
         this.envVars = envVars;
         this.workDir = workDir;
+        this.node = node;
+        this.mavenOpts = null;
+        this.installation = null;
+        this.jdk = null;
+    }
+
+    /**
+     * For a process launched outside of a build, with launch parameters that builds used on the node.
+     *
+     * @param installation
+     *      Already translated for the node.
+     * @param jdk
+     *      Already translated for the node.
+     */
+    AbstractMavenProcessFactory(Launcher launcher, EnvVars envVars, FilePath workDir, Node node, String mavenOpts, MavenInstallation installation, JDK jdk) {
+        this.mms = null;
+        this.launcher = launcher;
+        this.envVars = envVars;
+        this.workDir = workDir;
+        this.node = node;
+        this.mavenOpts = mavenOpts;
+        this.installation = installation;
+        this.jdk = jdk;
     }
 
     /**
@@ -185,11 +233,131 @@ public abstract class AbstractMavenProcessFactory
         }
     }
     
-    private static final class GetCharset implements Callable<String,IOException> {
-        public String call() throws IOException {
-            return System.getProperty("file.encoding");
+    /**
+     * Everything about a node that launching a Maven process there needs.
+     * None of this changes as long as the node stays connected, so it's only fetched once per channel.
+     */
+    static final class NodeInfo implements Serializable {
+        String charset;
+        String remotingJar;
+        /**
+         * MAVEN_OPTS in the environment of the node, or null.
+         */
+        String mavenOpts;
+        /**
+         * For each Maven home, the jars in its boot directories by the directory (relative to the home),
+         * then by the file name. Listed in the order the file system returned them.
+         */
+        final Map<String,Map<String,Map<String,String>>> bootJars = new ConcurrentHashMap<String,Map<String,Map<String,String>>>();
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final Map<VirtualChannel,NodeInfo> nodeInfos = new WeakHashMap<VirtualChannel,NodeInfo>();
+
+    /**
+     * Directories of a Maven installation, relative to its home, that may contain classworlds.
+     */
+    private static final String[] BOOT_DIRS = {"core/boot","boot"};
+
+    /**
+     * Opens a server socket on the node (see {@link SocketHandler}) and collects the parts of the
+     * {@link NodeInfo} that we don't know yet, so that launching a process takes one round-trip.
+     */
+    private static final class Bootstrap implements Callable<Bootstrap.Result,IOException> {
+        private final boolean openSocket;
+        private final boolean probeNode;
+        /**
+         * Maven home whose boot jars need to be listed, or null.
+         */
+        private final String mvnHome;
+
+        Bootstrap(boolean openSocket, boolean probeNode, String mvnHome) {
+            this.openSocket = openSocket;
+            this.probeNode = probeNode;
+            this.mvnHome = mvnHome;
+        }
+
+        public Result call() throws IOException {
+            Result r = new Result();
+            if (probeNode) {
+                r.info = new NodeInfo();
+                r.info.charset = System.getProperty("file.encoding");
+                r.info.remotingJar = new GetRemotingJar().call();
+                r.info.mavenOpts = System.getenv("MAVEN_OPTS");
+            }
+            if (mvnHome!=null) {
+                r.bootJars = new HashMap<String,Map<String,String>>();
+                for (String dir : BOOT_DIRS) {
+                    File[] files = new File(mvnHome,dir).listFiles();
+                    if (files==null)    continue;
+                    Map<String,String> jars = new LinkedHashMap<String,String>();
+                    for (File f : files)
+                        if (f.getName().endsWith(".jar"))
+                            jars.put(f.getName(),f.getAbsolutePath());
+                    r.bootJars.put(dir,jars);
+                }
+            }
+            if (openSocket)
+                r.acceptor = new SocketHandler().call();
+            return r;
+        }
+
+        static final class Result implements Serializable {
+            Acceptor acceptor;
+            NodeInfo info;
+            Map<String,Map<String,String>> bootJars;
+
+            private static final long serialVersionUID = 1L;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Gets the {@link NodeInfo} of the node of our launcher, along with the boot jars of the given Maven home,
+     * and optionally opens a server socket there, with at most one round-trip to the node.
+     *
+     * @return
+     *      Always has {@link Bootstrap.Result#info} set.
+     */
+    private Bootstrap.Result bootstrap(String mvnHome, boolean openSocket) throws IOException, InterruptedException {
+        VirtualChannel channel = launcher.getChannel();
+        if (channel==null)
+            throw new IOException("The node is offline");
+        NodeInfo info;
+        synchronized (nodeInfos) {
+            info = nodeInfos.get(channel);
+        }
+        boolean probeNode = info==null;
+        boolean listBootJars = mvnHome!=null && (info==null || !info.bootJars.containsKey(mvnHome));
+        if (!probeNode && !listBootJars && !openSocket) {
+            Bootstrap.Result r = new Bootstrap.Result();
+            r.info = info;
+            return r;
         }
-    }    
+
+        Bootstrap.Result r = channel.call(new Bootstrap(openSocket, probeNode, listBootJars ? mvnHome : null));
+        synchronized (nodeInfos) {
+            if (probeNode) {
+                info = r.info;
+                nodeInfos.put(channel,info);
+            }
+            if (listBootJars)
+                info.bootJars.put(mvnHome,r.bootJars);
+        }
+        r.info = info;
+        return r;
+    }
+
+    /**
+     * Forgets what we know about the node of our launcher, in case it turned out to be wrong.
+     */
+    private void forgetNodeInfo() {
+        synchronized (nodeInfos) {
+            nodeInfos.remove(launcher.getChannel());
+        }
+    }
 
     /**
      * Starts maven process.
@@ -197,12 +365,15 @@ public abstract class AbstractMavenProcessFactory
     public ProcessCache.NewProcess newProcess(BuildListener listener, OutputStream out) throws IOException, InterruptedException {
         if(MavenProcessFactory.debug)
             listener.getLogger().println("Using env variables: "+ envVars);
+        // whatever goes wrong, maybe the Maven installation or the node changed under us
+        boolean launched = false;
         try {
-            //launcher.getChannel().export( type, instance )
-            final Acceptor acceptor = launcher.getChannel().call(new SocketHandler());
+            MavenInstallation mvn = getMavenInstallation(listener);
+            Bootstrap.Result r = bootstrap(mvn==null ? null : mvn.getHome(), true);
+            final Acceptor acceptor = r.acceptor;
             Charset charset;
             try {
-                charset = Charset.forName(launcher.getChannel().call(new GetCharset()));
+                charset = Charset.forName(r.info.charset);
             } catch (UnsupportedCharsetException e) {
                 // choose the bit preserving charset. not entirely sure if iso-8859-1 does that though.
                 charset = Charset.forName("iso-8859-1");
@@ -210,7 +381,7 @@ public abstract class AbstractMavenProcessFactory
 
             MavenConsoleAnnotator mca = new MavenConsoleAnnotator(out,charset);
 
-            final ArgumentListBuilder cmdLine = buildMavenAgentCmdLine( listener,acceptor.getPort());
+            final ArgumentListBuilder cmdLine = buildMavenAgentCmdLine( listener,acceptor.getPort(),r.info);
             String[] cmds = cmdLine.toCommandArray();
             final Proc proc = launcher.launch().cmds(cmds).envs(envVars).stdout(mca).pwd(workDir).start();
 
@@ -226,19 +397,24 @@ public abstract class AbstractMavenProcessFactory
                 throw e;
             }
 
-            return new NewProcess(
+            NewProcess np = new NewProcess(
                 Channels.forProcess("Channel to Maven "+ Arrays.toString(cmds),
                     Computer.threadPoolForRemoting, new BufferedInputStream(con.in), new BufferedOutputStream(con.out),
                     listener.getLogger(), proc),
                 proc);
+            launched = true;
+            return np;
         } catch (IOException e) {
-            if(fixNull(e.getMessage()).contains("java: not found")) {
+            if(mms!=null && fixNull(e.getMessage()).contains("java: not found")) {
                 // diagnose issue #659
                 JDK jdk = mms.getJDK();
                 if(jdk==null)
                     throw new IOException(mms.getDisplayName()+" is not configured with a JDK, but your PATH doesn't include Java",e);
             }
             throw e;
+        } finally {
+            if(!launched)
+                forgetNodeInfo();
         }
     }
 
@@ -246,27 +422,26 @@ public abstract class AbstractMavenProcessFactory
      * Builds the command line argument list to launch the maven process.
      *
      */
-    protected abstract ArgumentListBuilder buildMavenAgentCmdLine(BuildListener listener,int tcpPort) 
+    protected abstract ArgumentListBuilder buildMavenAgentCmdLine(BuildListener listener,int tcpPort,NodeInfo nodeInfo) 
         throws IOException, InterruptedException;
     
     public String getMavenOpts() {
+        if (mms==null)
+            return this.mavenOpts;
         String mavenOpts = mms.getMavenOpts();
 
         if ((mavenOpts==null) || (mavenOpts.trim().length()==0)) {
-            Node n = getCurrentNode();
-            if (n!=null) {
-                try {
-                    String localMavenOpts = n.toComputer().getEnvironment().get("MAVEN_OPTS");
-                    
-                    if ((localMavenOpts!=null) && (localMavenOpts.trim().length()>0)) {
-                        mavenOpts = localMavenOpts;
-                    }
-                } catch (IOException e) {
-                } catch (InterruptedException e) {
-                    // Don't do anything - this just means the slave isn't running, so we
-                    // don't want to use its MAVEN_OPTS anyway.
-                }
+            try {
+                // the environment of the node is known once per channel, so this is usually free
+                String localMavenOpts = bootstrap(null, false).info.mavenOpts;
 
+                if ((localMavenOpts!=null) && (localMavenOpts.trim().length()>0)) {
+                    mavenOpts = localMavenOpts;
+                }
+            } catch (IOException e) {
+            } catch (InterruptedException e) {
+                // Don't do anything - this just means the slave isn't running, so we
+                // don't want to use its MAVEN_OPTS anyway.
             }
         }
         
@@ -274,6 +449,8 @@ public abstract class AbstractMavenProcessFactory
     }
 
     public MavenInstallation getMavenInstallation(TaskListener log) throws IOException, InterruptedException {
+        if (mms==null)
+            return installation;
         MavenInstallation mi = mms.getMaven();
         if (mi != null) mi = mi.forNode(getCurrentNode(), log).forEnvironment(envVars);
         return mi;
@@ -281,6 +458,8 @@ public abstract class AbstractMavenProcessFactory
     }
 
     public JDK getJava(TaskListener log) throws IOException, InterruptedException {
+        if (mms==null)
+            return this.jdk;
         JDK jdk = mms.getJDK();
         if (jdk != null) jdk = jdk.forNode(getCurrentNode(), log).forEnvironment(envVars);
         return jdk;
@@ -293,10 +472,43 @@ public abstract class AbstractMavenProcessFactory
         }
     }
 
+    /**
+     * Location of the remoting jar on the node.
+     */
+    protected static String getRemotingJar(NodeInfo nodeInfo) {
+        return nodeInfo.remotingJar;
+    }
+
+    /**
+     * Finds a jar in a boot directory of the Maven installation on the node.
+     *
+     * @param dir
+     *      Directory relative to the Maven home, either "core/boot" or "boot".
+     * @return
+     *      The absolute path of the first jar that matches the filter, or null if none.
+     */
+    protected static String findBootJar(NodeInfo nodeInfo, String mvnHome, String dir, FilenameFilter filter) {
+        Map<String,Map<String,String>> dirs = nodeInfo.bootJars.get(mvnHome);
+        Map<String,String> jars = dirs==null ? null : dirs.get(dir);
+        if (jars==null)
+            return null;
+        for (Map.Entry<String,String> jar : jars.entrySet()) {
+            if (filter.accept(null, jar.getKey()))
+                return jar.getValue();
+        }
+        return null;
+    }
+
+    public String getWorkDir() {
+        return workDir==null ? null : workDir.getRemote();
+    }
+
     /**
      * Returns the current {@link Node} on which we are buildling.
      */
-    protected Node getCurrentNode() {
+    public Node getCurrentNode() {
+        if(node!=null)
+            return node;
         return Executor.currentExecutor().getOwner().getNode();
     }
     
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.model.Action;
+
+import java.io.Serializable;
+
+/**
+ * Records how the asynchronous executions of a build went, as measured by {@link AsyncCallWindow}
+ * in the Maven process.
+ *
+ * <p>
+ * Kept with the build so that slow data collection on the master can be told apart from slow builds.
+ * This action has no UI.
+ */
+public final class AsyncCallStatistics implements Action, Serializable {
+    int submitted;
+    int maxInFlight;
+    int throttled;
+    long throttleWaitTime;
+    long drainWaitTime;
+
+    /**
+     * Number of {@link MavenBuildProxy.BuildCallable}s sent with {@link MavenBuildProxy#executeAsync(MavenBuildProxy.BuildCallable)}.
+     */
+    public int getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Largest number of executions that were in flight at the same time.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Number of times Maven had to wait for an execution to complete before it could send another.
+     */
+    public int getThrottled() {
+        return throttled;
+    }
+
+    /**
+     * Milliseconds Maven spent waiting for room to send more executions.
+     */
+    public long getThrottleWaitTime() {
+        return throttleWaitTime;
+    }
+
+    /**
+     * Milliseconds spent waiting for the remaining executions after Maven completed.
+     */
+    public long getDrainWaitTime() {
+        return drainWaitTime;
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
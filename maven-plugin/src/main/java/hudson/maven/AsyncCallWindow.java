@@ -0,0 +1,211 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.maven.MavenBuildProxy.BuildCallable;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.remoting.Callable;
+import hudson.remoting.Channel;
+import hudson.remoting.Future;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the {@link BuildCallable}s that the Maven process has sent to the master
+ * with {@link MavenBuildProxy#executeAsync(BuildCallable)}, so that they are all completed
+ * before the build finishes.
+ *
+ * <p>
+ * At most {@link #MAX_IN_FLIGHT} of them are outstanding at any time. When the window is full,
+ * the thread that sends the next one waits for the oldest to complete, so that a large reactor
+ * can't pile up its archiving and fingerprinting work on the master only to wait for all of it
+ * at the end. Completed executions are reaped as new ones are sent, and their failures reported
+ * right away. How this went is recorded as {@link AsyncCallStatistics}.
+ */
+class AsyncCallWindow {
+    private final BuildListener listener;
+    private final int size;
+    private final LinkedList<Future<?>> inFlight = new LinkedList<Future<?>>();
+    private final AsyncCallStatistics stats = new AsyncCallStatistics();
+
+    /**
+     * @param size
+     *      {@link #MAX_IN_FLIGHT} as seen on the master.
+     */
+    AsyncCallWindow(BuildListener listener, int size) {
+        this.listener = listener;
+        this.size = Math.max(1,size);
+    }
+
+    /**
+     * Sends the call to the master without waiting for its completion, unless the window is full.
+     *
+     * <p>
+     * When the window is full, this waits for the oldest execution while holding the lock of this window,
+     * so other threads that submit calls (with <tt>-T</tt>) or {@link #drain()} block until a slot is free.
+     * They would have had to wait for a slot anyway, and this keeps the calls in the order they were submitted.
+     */
+    synchronized void submit(Callable<?,?> call) throws IOException {
+        reap();
+        if (inFlight.size()>=size) {
+            if (stats.throttled++==0)
+                listener.getLogger().println(Messages.MavenBuilder_AsyncThrottled(inFlight.size()));
+            long start = System.nanoTime();
+            try {
+                while (inFlight.size()>=size) {
+                    // keep it in the window until it's done, so that drain() still waits for it if we are interrupted
+                    waitFor(inFlight.getFirst());
+                    inFlight.removeFirst();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (InterruptedIOException)new InterruptedIOException().initCause(e);
+            } finally {
+                stats.throttleWaitTime += TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+            }
+        }
+
+        add(send(call));
+        ReporterCosts.countAsyncCall();
+    }
+
+    /**
+     * Sends the call to the master.
+     */
+    Future<?> send(Callable<?,?> call) throws IOException {
+        return Channel.current().callAsync(call);
+    }
+
+    /**
+     * The only way into the window, so that the peak depth is seen whenever it's reached.
+     */
+    private void add(Future<?> f) {
+        inFlight.add(f);
+        stats.submitted++;
+        stats.maxInFlight = Math.max(stats.maxInFlight,inFlight.size());
+    }
+
+    AsyncCallStatistics getStatistics() {
+        return stats;
+    }
+
+    /**
+     * Waits for all the executions that are still in flight.
+     *
+     * @throws InterruptedException
+     *      if interrupted while waiting. The executions are cancelled.
+     */
+    synchronized void drain() throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            boolean messageReported = false;
+            while (!inFlight.isEmpty()) {
+                Future<?> f = inFlight.getFirst();
+                if(!f.isDone() && !messageReported) {
+                    messageReported = true;
+                    listener.getLogger().println(Messages.MavenBuilder_Waiting());
+                }
+                waitFor(f);
+                inFlight.removeFirst();
+            }
+        } catch (InterruptedException e) {
+            // attempt to cancel all asynchronous tasks
+            for (Future<?> f : inFlight)
+                f.cancel(true);
+            inFlight.clear();
+            throw e;
+        } finally {
+            stats.drainWaitTime += TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+        }
+
+        if (stats.submitted>0)
+            listener.getLogger().println(Messages.MavenBuilder_AsyncCalls(
+                    stats.submitted, stats.maxInFlight, stats.throttleWaitTime, stats.drainWaitTime));
+    }
+
+    /**
+     * Adds the {@link AsyncCallStatistics} to the build, through the given proxy.
+     *
+     * @param aggregated
+     *      True to record them with the {@link MavenModuleSetBuild} the module build belongs to.
+     */
+    synchronized void record(MavenBuildProxy proxy, boolean aggregated) {
+        if (stats.submitted==0)
+            return;
+        try {
+            proxy.execute(new RecordTask(stats,aggregated));
+        } catch (IOException e) {
+            e.printStackTrace(listener.error("Failed to record the asynchronous execution statistics"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes the executions that have completed.
+     */
+    private void reap() {
+        for (Iterator<Future<?>> itr = inFlight.iterator(); itr.hasNext();) {
+            Future<?> f = itr.next();
+            if (f.isDone()) {
+                itr.remove();
+                try {
+                    waitFor(f);
+                } catch (InterruptedException e) {
+                    // can't happen, as the execution has completed
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void waitFor(Future<?> f) throws InterruptedException {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            e.printStackTrace(listener.error(Messages.MavenBuilder_AsyncFailed()));
+        }
+    }
+
+    private static final class RecordTask implements BuildCallable<Void,IOException> {
+        private final AsyncCallStatistics stats;
+        private final boolean aggregated;
+
+        RecordTask(AsyncCallStatistics stats, boolean aggregated) {
+            this.stats = stats;
+            this.aggregated = aggregated;
+        }
+
+        public Void call(MavenBuild build) throws IOException, InterruptedException {
+            AbstractBuild<?,?> b = aggregated ? build.getParentBuild() : build;
+            if (b==null)
+                b = build;
+            b.addAction(stats);
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Maximum number of asynchronous executions a build can have in flight.
+     */
+    public static int MAX_IN_FLIGHT = Integer.getInteger(AsyncCallWindow.class.getName()+".maxInFlight",64);
+}
@@ -0,0 +1,445 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.FilePath;
+import hudson.model.Result;
+import hudson.remoting.Channel;
+import hudson.remoting.DelegatingCallable;
+import hudson.remoting.RemotingSystemException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link MavenBuildProxy2} used inside the Maven process that holds back the calls
+ * that don't return anything, and sends them to the master together with the next call
+ * that has to wait for the master anyway.
+ *
+ * <p>
+ * Every method of an exported proxy is a blocking round-trip, and those are paid
+ * on the Maven thread. {@link #setResult(Result)}, {@link #setExecutedMojos(List)} and the
+ * project action registrations are therefore queued. {@link #start()}, {@link #end()},
+ * {@link #appendLastLog()} and {@link #execute(BuildCallable)} still block, since the console
+ * output and the caller depend on them having happened, but they carry the queued calls
+ * with them in a single round-trip. The values that can't change during a build are only
+ * asked for once.
+ *
+ * <p>
+ * All the proxies of one build share a {@link Batch}, so the calls on a module reach the master
+ * in the order they were made. Batches that don't carry calls on the same module are sent
+ * concurrently, so parallel builds only wait for each other when they touch the same module.
+ * {@link #executeAsync(BuildCallable)} sends the queued calls first, so that the program sees their effect.
+ * {@link Batch#flush()} must be called before the build completes.
+ *
+ * <p>
+ * Only Maven 3 builds go through this class.
+ */
+final class BatchingBuildProxy extends MavenBuildProxy2.Filter<MavenBuildProxy2> {
+    /**
+     * The proxy exported from the master, which the queued calls are made on.
+     */
+    private final MavenBuildProxy2 remote;
+    private final transient Batch batch;
+
+    private transient FilePath rootDir, projectRootDir, moduleSetRootDir, artifactsDir;
+    private transient Calendar timestamp;
+    private transient Boolean archivingDisabled;
+
+    /**
+     * @param core
+     *      The proxy that the calls this class doesn't handle are delegated to.
+     * @param remote
+     *      The proxy exported from the master that {@code core} eventually talks to.
+     */
+    BatchingBuildProxy(MavenBuildProxy2 core, MavenBuildProxy2 remote, Batch batch) {
+        super(core);
+        this.remote = remote;
+        this.batch = batch;
+    }
+
+    @Override
+    public <V, T extends Throwable> V execute(BuildCallable<V, T> program) throws T, IOException, InterruptedException {
+        return (V)batch.call(new Execute(remote,program));
+    }
+
+    @Override
+    public void executeAsync(BuildCallable<?,?> program) throws IOException {
+        try {
+            batch.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException)new InterruptedIOException().initCause(e);
+        }
+        super.executeAsync(program);
+    }
+
+    @Override
+    public void start() {
+        batch.callQuietly(new Start(remote));
+    }
+
+    @Override
+    public void end() {
+        batch.callQuietly(new End(remote));
+    }
+
+    @Override
+    public void appendLastLog() {
+        batch.callQuietly(new AppendLastLog(remote));
+    }
+
+    @Override
+    public void setResult(Result result) {
+        batch.add(new SetResult(remote,result));
+    }
+
+    @Override
+    public void setExecutedMojos(List<ExecutedMojo> executedMojos) {
+        // the list keeps growing on our side, so send what it contains now
+        batch.add(new SetExecutedMojos(remote,new ArrayList<ExecutedMojo>(executedMojos)));
+    }
+
+    @Override
+    public void registerAsProjectAction(MavenReporter reporter) {
+        batch.add(new RegisterAsProjectAction(remote,reporter));
+    }
+
+    @Override
+    public void registerAsProjectAction(MavenProjectActionBuilder builder) {
+        batch.add(new RegisterAsProjectAction(remote,builder));
+    }
+
+    @Override
+    public void registerAsAggregatedProjectAction(MavenReporter reporter) {
+        batch.add(new RegisterAsAggregatedProjectAction(remote,reporter));
+    }
+
+    @Override
+    public FilePath getRootDir() {
+        if (rootDir==null) {
+            ReporterCosts.countRoundTrip();
+            rootDir = core.getRootDir();
+        }
+        return rootDir;
+    }
+
+    @Override
+    public FilePath getProjectRootDir() {
+        if (projectRootDir==null) {
+            ReporterCosts.countRoundTrip();
+            projectRootDir = core.getProjectRootDir();
+        }
+        return projectRootDir;
+    }
+
+    @Override
+    public FilePath getModuleSetRootDir() {
+        if (moduleSetRootDir==null) {
+            ReporterCosts.countRoundTrip();
+            moduleSetRootDir = core.getModuleSetRootDir();
+        }
+        return moduleSetRootDir;
+    }
+
+    @Override
+    public FilePath getArtifactsDir() {
+        if (artifactsDir==null) {
+            ReporterCosts.countRoundTrip();
+            artifactsDir = core.getArtifactsDir();
+        }
+        return artifactsDir;
+    }
+
+    @Override
+    public Calendar getTimestamp() {
+        if (timestamp==null) {
+            ReporterCosts.countRoundTrip();
+            timestamp = core.getTimestamp();
+        }
+        return (Calendar)timestamp.clone();
+    }
+
+    @Override
+    public long getMilliSecsSinceBuildStart() {
+        ReporterCosts.countRoundTrip();
+        return core.getMilliSecsSinceBuildStart();
+    }
+
+    @Override
+    public boolean isArchivingDisabled() {
+        if (archivingDisabled==null) {
+            ReporterCosts.countRoundTrip();
+            archivingDisabled = core.isArchivingDisabled();
+        }
+        return archivingDisabled;
+    }
+
+    public MavenBuildInformation getMavenBuildInformation() {
+        return core.getMavenBuildInformation();
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Calls waiting to be sent to the master, shared by all the proxies of a build.
+     */
+    static class Batch {
+        private final Channel channel;
+        private final ClassLoader classLoader;
+        private final List<Call> queue = new ArrayList<Call>();
+        /**
+         * Targets of the calls in the batches that are on their way, compared by identity
+         * as the remote proxies would forward {@link Object#equals(Object)} to the master.
+         * A batch that has calls on one of these waits, so that it can't overtake them on the master.
+         */
+        private final Set<MavenBuildProxy2> inFlight = Collections.newSetFromMap(new IdentityHashMap<MavenBuildProxy2,Boolean>());
+
+        /**
+         * @param channel
+         *      The channel to the master.
+         * @param classLoader
+         *      The class loader the builder came through from the master. The calls refer to
+         *      classes of other plugins, which the master resolves through the same class loader.
+         */
+        Batch(Channel channel, ClassLoader classLoader) {
+            this.channel = channel;
+            this.classLoader = classLoader;
+        }
+
+        synchronized void add(Call call) {
+            if (call instanceof SetExecutedMojos) {
+                // only the last list matters
+                for (Iterator<Call> itr = queue.iterator(); itr.hasNext();) {
+                    Call c = itr.next();
+                    if (c instanceof SetExecutedMojos && c.target==call.target)
+                        itr.remove();
+                }
+            }
+            queue.add(call);
+        }
+
+        /**
+         * Sends the queued calls along with the given one, and waits for the result of the latter.
+         */
+        Object call(Call last) throws IOException, InterruptedException {
+            ReporterCosts.countRoundTrip();
+            List<Call> calls;
+            synchronized (this) {
+                while (isInFlight(last) || isInFlight(queue))
+                    wait();
+                calls = new ArrayList<Call>(queue);
+                calls.add(last);
+                queue.clear();
+                for (Call c : calls)
+                    if (c.target!=null)
+                        inFlight.add(c.target);
+            }
+            try {
+                return send(new Invoker(calls,classLoader));
+            } catch (IOException e) {
+                throw e;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // checked exception thrown by a BuildCallable. the caller has declared it.
+                throw Batch.<RuntimeException>sneakyThrow(t);
+            } finally {
+                synchronized (this) {
+                    for (Call c : calls)
+                        inFlight.remove(c.target);
+                    notifyAll();
+                }
+            }
+        }
+
+        private boolean isInFlight(Call call) {
+            return call.target!=null && inFlight.contains(call.target);
+        }
+
+        private boolean isInFlight(List<Call> calls) {
+            for (Call c : calls)
+                if (isInFlight(c))
+                    return true;
+            return false;
+        }
+
+        /**
+         * Sends a batch to the master and waits for the result.
+         */
+        Object send(Invoker invoker) throws Throwable {
+            return channel.call(invoker);
+        }
+
+        /**
+         * Like {@link #call(Call)}, for the methods of {@link MavenBuildProxy2} that can't throw checked exceptions.
+         * Failures are reported the way the exported proxy reports them.
+         */
+        void callQuietly(Call last) {
+            try {
+                call(last);
+            } catch (IOException e) {
+                throw new RemotingSystemException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemotingSystemException(e);
+            }
+        }
+
+        /**
+         * Sends whatever is still queued.
+         */
+        void flush() throws IOException, InterruptedException {
+            synchronized (this) {
+                if (queue.isEmpty())
+                    return;
+            }
+            call(new Nop());
+        }
+
+        private static <T extends Throwable> T sneakyThrow(Throwable t) throws T {
+            throw (T)t;
+        }
+    }
+
+    /**
+     * Runs a series of {@link Call}s on the master. Only the last one can fail the whole invocation.
+     */
+    static final class Invoker implements DelegatingCallable<Object,Throwable> {
+        final List<Call> calls;
+        private final transient ClassLoader classLoader;
+
+        Invoker(List<Call> calls, ClassLoader classLoader) {
+            this.calls = calls;
+            this.classLoader = classLoader;
+        }
+
+        public ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        public Object call() throws Throwable {
+            for (int i=0; i<calls.size()-1; i++) {
+                try {
+                    calls.get(i).call();
+                } catch (Throwable t) {
+                    // nobody is waiting for this one any more
+                    LOGGER.log(Level.WARNING, "Failed to process "+calls.get(i).getClass().getSimpleName()+" from the Maven process", t);
+                }
+            }
+            return calls.get(calls.size()-1).call();
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * A method invocation on the proxy, to be executed on the master.
+     */
+    static abstract class Call implements Serializable {
+        /**
+         * Resolves to the real object once we are on the master.
+         */
+        final MavenBuildProxy2 target;
+
+        Call(MavenBuildProxy2 target) {
+            this.target = target;
+        }
+
+        abstract Object call() throws Throwable;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class Nop extends Call {
+        Nop() { super(null); }
+        Object call() { return null; }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class Execute extends Call {
+        private final BuildCallable<?,?> program;
+        Execute(MavenBuildProxy2 target, BuildCallable<?,?> program) { super(target); this.program = program; }
+        Object call() throws Throwable { return target.execute(program); }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class Start extends Call {
+        Start(MavenBuildProxy2 target) { super(target); }
+        Object call() { target.start(); return null; }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class End extends Call {
+        End(MavenBuildProxy2 target) { super(target); }
+        Object call() { target.end(); return null; }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class AppendLastLog extends Call {
+        AppendLastLog(MavenBuildProxy2 target) { super(target); }
+        Object call() { target.appendLastLog(); return null; }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class SetResult extends Call {
+        private final Result result;
+        SetResult(MavenBuildProxy2 target, Result result) { super(target); this.result = result; }
+        Object call() { target.setResult(result); return null; }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class SetExecutedMojos extends Call {
+        private final List<ExecutedMojo> executedMojos;
+        SetExecutedMojos(MavenBuildProxy2 target, List<ExecutedMojo> executedMojos) { super(target); this.executedMojos = executedMojos; }
+        Object call() { target.setExecutedMojos(executedMojos); return null; }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class RegisterAsProjectAction extends Call {
+        private final MavenReporter reporter;
+        private final MavenProjectActionBuilder builder;
+        RegisterAsProjectAction(MavenBuildProxy2 target, MavenReporter reporter) { super(target); this.reporter = reporter; this.builder = null; }
+        RegisterAsProjectAction(MavenBuildProxy2 target, MavenProjectActionBuilder builder) { super(target); this.reporter = null; this.builder = builder; }
+        Object call() {
+            if (reporter!=null) target.registerAsProjectAction(reporter);
+            else                target.registerAsProjectAction(builder);
+            return null;
+        }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class RegisterAsAggregatedProjectAction extends Call {
+        private final MavenReporter reporter;
+        RegisterAsAggregatedProjectAction(MavenBuildProxy2 target, MavenReporter reporter) { super(target); this.reporter = reporter; }
+        Object call() { target.registerAsAggregatedProjectAction(reporter); return null; }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BatchingBuildProxy.class.getName());
+}
@@ -22,11 +22,14 @@ import hudson.model.Hudson;
 import hudson.remoting.Which;
 import hudson.util.ReflectionUtils;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -88,7 +91,7 @@ public final class ExecutedMojo implements Serializable {
         PluginDescriptor pd = md.getPluginDescriptor();
         try {
             Class clazz = getMojoClass( md, pd );// pd.getClassRealm().loadClass(md.getImplementation());
-            digest = Util.getDigestOf(new FileInputStream(Which.jarFile(clazz)));
+            digest = getDigestOf(Which.jarFile(clazz));
         } catch (IllegalArgumentException e) {
             LOGGER.log(Level.WARNING, "Failed to locate jar for "+md.getImplementation(),e);
         } catch (ClassNotFoundException e) {
@@ -97,6 +100,62 @@ public final class ExecutedMojo implements Serializable {
         this.digest = digest;
     }
     
+    /**
+     * Gets the MD5 hash of the plugin jar, computing it only once per version of the jar.
+     */
+    /*package*/ static String getDigestOf(File jar) throws IOException {
+        long size = jar.length();
+        long timestamp = jar.lastModified();
+        JarDigest d;
+        synchronized (jarDigests) {
+            d = jarDigests.get(jar.getPath());
+            if (d==null || d.size!=size || d.timestamp!=timestamp)
+                jarDigests.put(jar.getPath(), d=new JarDigest(size,timestamp));
+        }
+        return d.get(jar);
+    }
+
+    /**
+     * MD5 hash of one version of a plugin jar.
+     */
+    private static final class JarDigest {
+        final long size;
+        final long timestamp;
+        private String digest;
+
+        JarDigest(long size, long timestamp) {
+            this.size = size;
+            this.timestamp = timestamp;
+        }
+
+        synchronized String get(File jar) throws IOException {
+            if (digest==null) {
+                InputStream in = new FileInputStream(jar);
+                try {
+                    digest = Util.getDigestOf(in);
+                } finally {
+                    in.close();
+                }
+            }
+            return digest;
+        }
+    }
+
+    /**
+     * Digests of the plugin jars by their path. Plugins are shared by all the modules and,
+     * in a reused Maven process, by all the builds, so this is kept for the life of the JVM.
+     * Holds at most {@link #MAX_JAR_DIGESTS} jars, dropping the least recently used ones,
+     * since every plugin version a long lived process runs into has a path of its own.
+     */
+    private static final Map<String,JarDigest> jarDigests = new LinkedHashMap<String,JarDigest>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,JarDigest> eldest) {
+            return size()>MAX_JAR_DIGESTS;
+        }
+    };
+
+    private static final int MAX_JAR_DIGESTS = 1024;
+
     private Class<?> getMojoClass(MojoDescriptor md, PluginDescriptor pd) throws ClassNotFoundException {
         try {
             return pd.getClassRealm().loadClass( md.getImplementation() );
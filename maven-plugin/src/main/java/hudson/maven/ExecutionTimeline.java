@@ -0,0 +1,276 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.maven.MavenBuildProxy.BuildCallable;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records what the Maven process spent its time on during a build, as a series of spans
+ * (the session, each module, each mojo and fork, and the time Hudson spent in its own callbacks)
+ * along with the thread they ran on.
+ *
+ * <p>
+ * The timeline is recorded in the Maven process, sent to the master at the end of the build
+ * and saved next to the build as {@link #FILE_NAME}, one line per span. {@link ExecutionTimelineAction}
+ * serves it in the trace event format understood by Chrome's {@code about:tracing}.
+ */
+final class ExecutionTimeline implements Serializable {
+    /**
+     * When the timeline started, as {@link System#currentTimeMillis()}.
+     */
+    private final long startTime = System.currentTimeMillis();
+    /**
+     * {@link System#nanoTime()} at {@link #startTime}. Only meaningful in the JVM that recorded the timeline.
+     */
+    private final transient long origin = System.nanoTime();
+
+    private final StringBuilder spans = new StringBuilder();
+    private int spanCount;
+    private final Map<Long,String> threadNames = new HashMap<Long,String>();
+    private final transient Map<Key,Open> open = new HashMap<Key,Open>();
+
+    /**
+     * Marks the start of a span that will be recorded with {@link #end(String, String, long)}.
+     */
+    long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a span of the current thread, which started at the given {@link #begin()}.
+     */
+    synchronized void end(String category, String name, long begin) {
+        add(category, name, Thread.currentThread(), begin, System.nanoTime());
+    }
+
+    /**
+     * Starts a span that ends in another callback, with {@link #close(String, Object)}.
+     *
+     * @param key
+     *      The object the span is about, such as the {@code MavenProject}. Compared by identity.
+     */
+    synchronized void open(String category, Object key, String name) {
+        open.put(new Key(category,key), new Open(name,Thread.currentThread(),System.nanoTime()));
+    }
+
+    synchronized void close(String category, Object key) {
+        Open o = open.remove(new Key(category,key));
+        if (o!=null)
+            add(category, o.name, o.thread, o.begin, System.nanoTime());
+    }
+
+    /**
+     * Ends the spans that are still open, for example because Maven stopped at a failure.
+     */
+    synchronized void closeAll() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Key,Open>> itr = open.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry<Key,Open> e = itr.next();
+            add(e.getKey().category, e.getValue().name, e.getValue().thread, e.getValue().begin, now);
+            itr.remove();
+        }
+    }
+
+    private void add(String category, String name, Thread thread, long begin, long end) {
+        if (spanCount>=MAX_SPANS)
+            return;
+        spanCount++;
+
+        Long tid = thread.getId();
+        if (!threadNames.containsKey(tid))
+            threadNames.put(tid,thread.getName());
+
+        spans.append(category).append('\t')
+             .append(tid).append('\t')
+             .append(TimeUnit.NANOSECONDS.toMicros(begin-origin)).append('\t')
+             .append(TimeUnit.NANOSECONDS.toMicros(end-begin)).append('\t')
+             .append(oneField(name)).append('\n');
+    }
+
+    /**
+     * Makes the name fit into the last field of a line of {@link #FILE_NAME}.
+     * Anything that {@link BufferedReader#readLine()} takes for the end of a line has to go.
+     */
+    private static String oneField(String name) {
+        return name.replace('\t',' ').replace('\n',' ').replace('\r',' ');
+    }
+
+    /**
+     * Saves the timeline with the build, through the given proxy.
+     *
+     * @param aggregated
+     *      True to save it with the {@link MavenModuleSetBuild} the module build belongs to.
+     */
+    void record(MavenBuildProxy proxy, boolean aggregated, BuildListener listener) {
+        closeAll();
+        try {
+            proxy.execute(new RecordTask(this,aggregated));
+        } catch (IOException e) {
+            e.printStackTrace(listener.error("Failed to record the execution timeline"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the timeline in the format of {@link #FILE_NAME}.
+     */
+    /*package*/ synchronized void save(File file) throws IOException {
+        Writer w = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+        try {
+            w.write(startTime+"\n");
+            for (Map.Entry<Long,String> e : threadNames.entrySet())
+                w.write("thread\t"+e.getKey()+"\t0\t0\t"+oneField(e.getValue())+"\n");
+            w.write(spans.toString());
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Converts a saved timeline to the JSON object format of the trace event format.
+     */
+    static void writeTraceEvents(File file, Writer w) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),"UTF-8"));
+        try {
+            long startTime = Long.parseLong(in.readLine());
+            w.write("{\"otherData\":{\"startTime\":"+startTime+"},\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            boolean first = true;
+            String line;
+            while ((line=in.readLine())!=null) {
+                String[] t = line.split("\t",5);
+                if (t.length<5)
+                    continue;
+                if (!first)
+                    w.write(",\n");
+                first = false;
+                if (t[0].equals("thread")) {
+                    w.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":"+t[1]+",\"args\":{\"name\":");
+                    writeString(t[4],w);
+                    w.write("}}");
+                } else {
+                    w.write("{\"ph\":\"X\",\"cat\":");
+                    writeString(t[0],w);
+                    w.write(",\"name\":");
+                    writeString(t[4],w);
+                    w.write(",\"pid\":1,\"tid\":"+t[1]+",\"ts\":"+t[2]+",\"dur\":"+t[3]+"}");
+                }
+            }
+            w.write("]}");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeString(String s, Writer w) throws IOException {
+        w.write('"');
+        for (int i=0; i<s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch=='"' || ch=='\\') {
+                w.write('\\');
+                w.write(ch);
+            } else if (ch<0x20) {
+                w.write(String.format("\\u%04x",(int)ch));
+            } else {
+                w.write(ch);
+            }
+        }
+        w.write('"');
+    }
+
+    private static final class Key {
+        final String category;
+        final Object object;
+
+        Key(String category, Object object) {
+            this.category = category;
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return this.object==that.object && this.category.equals(that.category);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object)*31+category.hashCode();
+        }
+    }
+
+    private static final class Open {
+        final String name;
+        final Thread thread;
+        final long begin;
+
+        Open(String name, Thread thread, long begin) {
+            this.name = name;
+            this.thread = thread;
+            this.begin = begin;
+        }
+    }
+
+    private static final class RecordTask implements BuildCallable<Void,IOException> {
+        private final ExecutionTimeline timeline;
+        private final boolean aggregated;
+
+        RecordTask(ExecutionTimeline timeline, boolean aggregated) {
+            this.timeline = timeline;
+            this.aggregated = aggregated;
+        }
+
+        public Void call(MavenBuild build) throws IOException, InterruptedException {
+            AbstractBuild<?,?> b = aggregated ? build.getParentBuild() : build;
+            if (b==null)
+                b = build;
+            timeline.save(new File(b.getRootDir(),FILE_NAME));
+            if (b.getAction(ExecutionTimelineAction.class)==null)
+                b.addAction(new ExecutionTimelineAction());
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Name of the file in the build directory that the timeline is saved to.
+     */
+    static final String FILE_NAME = "timeline.txt";
+
+    /**
+     * Spans beyond this number are not recorded, to keep the file reasonable in very large builds.
+     */
+    private static final int MAX_SPANS = 200000;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Serves the {@link ExecutionTimeline} saved with a build, at {@code .../executionTimeline/},
+ * as a JSON file that can be loaded in Chrome's {@code about:tracing}. The side panel of the build
+ * links to it.
+ *
+ * <p>
+ * The timeline itself lives in a file in the build directory, so this action has no state.
+ */
+public final class ExecutionTimelineAction implements Action {
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.ExecutionTimelineAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "executionTimeline";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        AbstractBuild<?,?> build = req.findAncestorObject(AbstractBuild.class);
+        File file = build==null ? null : new File(build.getRootDir(),ExecutionTimeline.FILE_NAME);
+        if (file==null || !file.exists()) {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Content-Disposition","attachment; filename=timeline-"+build.getNumber()+".json");
+        Writer w = rsp.getWriter();
+        ExecutionTimeline.writeTraceEvents(file,w);
+        w.flush();
+    }
+}
@@ -22,7 +22,6 @@ import hudson.model.Hudson;
 import hudson.model.Result;
 import hudson.remoting.Channel;
 import hudson.remoting.DelegatingCallable;
-import hudson.remoting.Future;
 import hudson.util.IOException2;
 
 import java.io.IOException;
@@ -30,15 +29,13 @@ import java.io.PrintStream;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
 
 import org.apache.maven.cli.PrintStreamLogger;
 import org.apache.maven.execution.AbstractExecutionListener;
@@ -68,12 +65,33 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
      * the setting at master.
      */
     private final boolean profile = MavenProcessFactory.profile;
+
+    /**
+     * Whether the Plexus container of the Maven process is kept for the next build.
+     * Captured at the constructor for the same reason as {@link #profile}.
+     */
+    private final boolean reuseContainer = REUSE_CONTAINER;
     
     /**
      * Record all asynchronous executions as they are scheduled,
      * to make sure they are all completed before we finish.
      */
-    protected transient /*final*/ List<Future<?>> futures;
+    /*package*/ transient /*final*/ AsyncCallWindow asyncCalls;
+
+    /**
+     * {@link AsyncCallWindow#MAX_IN_FLIGHT} at master.
+     */
+    private final int maxAsyncCalls = AsyncCallWindow.MAX_IN_FLIGHT;
+
+    /**
+     * Where the time of this build goes.
+     */
+    /*package*/ transient /*final*/ ExecutionTimeline timeline;
+
+    /**
+     * What the {@link MavenReporter} callbacks of this build cost.
+     */
+    /*package*/ transient /*final*/ ReporterCosts reporterCosts;
     
     HudsonMavenExecutionResult mavenExecutionResult;    
     
@@ -93,54 +111,58 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
 
         this.reporters.putAll( reporters );
     }    
+
+    /**
+     * Builds a single module on its own (with "-N"), as opposed to the whole reactor
+     * of a {@link MavenModuleSet}. The reporters are ended by {@link MavenBuild} itself.
+     */
+    protected Maven3Builder(BuildListener listener, ModuleName moduleName, MavenBuildProxy2 proxy, List<MavenReporter> reporters, List<String> goals, Map<String, String> systemProps, MavenBuildInformation mavenBuildInformation) {
+        super( listener, goals, systemProps );
+        this.mavenBuildInformation = mavenBuildInformation;
+        sourceProxies = Collections.emptyMap();
+        this.proxies = new HashMap<ModuleName, MavenBuildProxy2>();
+        this.proxies.put( moduleName, new FilterImpl( proxy, this.mavenBuildInformation ) );
+
+        this.reporters.put( moduleName, reporters );
+    }
     
     public Result call() throws IOException {
 
+        timeline = new ExecutionTimeline();
+        reporterCosts = new ReporterCosts();
+        asyncCalls = new AsyncCallWindow(listener,maxAsyncCalls);
         MavenExecutionListener mavenExecutionListener = new MavenExecutionListener( this );
         try {
-            futures = new ArrayList<Future<?>>();
-            
             Maven3Launcher.setMavenExecutionListener( mavenExecutionListener );
+            Maven3Launcher.setReuseContainer( reuseContainer );
+            // the JVM might have been used by a previous build, so don't pick up its result
+            Maven3Launcher.setMavenExecutionResult( null );
             
             markAsSuccess = false;
 
-            // working around NPE when someone puts a null value into systemProps.
-            for (Map.Entry<String,String> e : systemProps.entrySet()) {
-                if (e.getValue()==null)
-                    throw new IllegalArgumentException("System property "+e.getKey()+" has a null value");
-                System.getProperties().put(e.getKey(), e.getValue());
-            }
+            resetSystemProperties();
 
             listener.getLogger().println(formatArgs(goals));
             
             
+            long launchTime = timeline.begin();
             int r = Maven3Main.launch( goals.toArray(new String[goals.size()]));
+            timeline.end("maven","Maven",launchTime);
+
+            // deliver what the modules reported after their last blocking call
+            mavenExecutionListener.batch.flush();
 
             // now check the completion status of async ops
-            boolean messageReported = false;
             long startTime = System.nanoTime();
-            for (Future<?> f : futures) {
-                try {
-                    if(!f.isDone() && !messageReported) {
-                        messageReported = true;
-                        // FIXME messages
-                        listener.getLogger().println("maven builder waiting");
-                    }
-                    f.get();
-                } catch (InterruptedException e) {
-                    // attempt to cancel all asynchronous tasks
-                    for (Future<?> g : futures)
-                        g.cancel(true);
-                    // FIXME messages
-                    listener.getLogger().println("build aborted");
-                    return Result.ABORTED;
-                } catch (ExecutionException e) {
-                    // FIXME messages
-                    e.printStackTrace(listener.error("async build failed"));
-                }
+            try {
+                asyncCalls.drain();
+            } catch (InterruptedException e) {
+                // FIXME messages
+                listener.getLogger().println("build aborted");
+                return Result.ABORTED;
             }
+            timeline.end("hudson","Waiting for asynchronous executions",startTime);
             mavenExecutionListener.overheadTime += System.nanoTime()-startTime;
-            futures.clear();
 
             if(profile) {
                 NumberFormat n = NumberFormat.getInstance();
@@ -180,6 +202,20 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
             throw new IOException2(e);
         } catch (Exception e) {
             throw new IOException2(e);
+        } finally {
+            // don't let this build leak into the next one when the process gets recycled
+            Maven3Launcher.setMavenExecutionListener( null );
+            Maven3Launcher.setMavenExecutionResult( null );
+            markAsSuccess = false;
+
+            // failed and aborted builds get these too
+            if (!proxies.isEmpty()) {
+                // only the aggregator build has the source proxies
+                MavenBuildProxy proxy = proxies.values().iterator().next();
+                asyncCalls.record(proxy, !sourceProxies.isEmpty());
+                timeline.record(proxy, !sourceProxies.isEmpty(), listener);
+                reporterCosts.record(proxy, !sourceProxies.isEmpty(), listener);
+            }
         }
     }
 
@@ -193,16 +229,26 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
      * Invoked after the maven has finished running, and in the master, not in the maven process.
      */
     void end(Launcher launcher) throws IOException, InterruptedException {
+        ReporterCosts costs = new ReporterCosts();
+        MavenBuild owner = null;
         for (Map.Entry<ModuleName,ProxyImpl2> e : sourceProxies.entrySet()) {
             ProxyImpl2 p = e.getValue();
+            owner = p.owner();
             for (MavenReporter r : reporters.get(e.getKey())) {
                 // we'd love to do this when the module build ends, but doing so requires
                 // we know how many task segments are in the current build.
-                r.end(p.owner(),launcher,listener);
+                long t = costs.begin(r,"end");
+                try {
+                    r.end(p.owner(),launcher,listener);
+                } finally {
+                    costs.end(t);
+                }
                 p.appendLastLog();
             }
             p.close();
         }
+        if (owner!=null)
+            costs.record(owner.getParentBuild()!=null ? owner.getParentBuild() : owner);
     }      
 
     private class FilterImpl extends MavenBuildProxy2.Filter<MavenBuildProxy2> implements Serializable {
@@ -216,7 +262,7 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
 
         @Override
         public void executeAsync(final BuildCallable<?,?> program) throws IOException {
-            futures.add(Channel.current().callAsync(new AsyncInvoker(core,program)));
+            asyncCalls.submit(new AsyncInvoker(core,program));
         }
 
         private static final long serialVersionUID = 1L;
@@ -238,35 +284,63 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
         long overheadTime;
         
        
-        private final Map<ModuleName,MavenBuildProxy2> proxies;
-        
-        private final Map<ModuleName,List<ExecutedMojo>> executedMojosPerModule = new ConcurrentHashMap<ModuleName, List<ExecutedMojo>>();
-        
-        private final Map<ModuleName,List<MavenReporter>> reporters = new HashMap<ModuleName,List<MavenReporter>>();
+        /**
+         * Everything this listener keeps track of for one module.
+         */
+        private static final class ModuleState {
+            final MavenBuildProxy2 proxy;
+            final List<MavenReporter> reporters;
+            final List<ExecutedMojo> executedMojos = new CopyOnWriteArrayList<ExecutedMojo>();
+            /**
+             * When the mojo currently running in this module started, or -1 if unknown.
+             */
+            volatile long mojoStartTime = -1;
+
+            ModuleState(MavenBuildProxy2 proxy, List<MavenReporter> reporters) {
+                this.proxy = proxy;
+                this.reporters = reporters;
+            }
+        }
+
+        private final Map<ModuleName,ModuleState> modules = new HashMap<ModuleName,ModuleState>();
+
+        /**
+         * {@link ModuleState}s by the {@link MavenProject} instances that come with the events,
+         * so that each event costs a single identity lookup and no garbage.
+         */
+        private final Map<MavenProject,ModuleState> moduleStates = Collections.synchronizedMap(new IdentityHashMap<MavenProject,ModuleState>());
         
-        private final Map<ModuleName, Long> currentMojoStartPerModuleName = new ConcurrentHashMap<ModuleName, Long>();
+        /**
+         * Calls to the proxies that are on their way to the master.
+         */
+        private final transient BatchingBuildProxy.Batch batch;
         
         private ExecutionEventLogger eventLogger;
 
         public MavenExecutionListener(Maven3Builder maven3Builder) {
             this.maven3Builder = maven3Builder;
-            this.proxies = new HashMap<ModuleName, MavenBuildProxy2>(maven3Builder.proxies);
-            for (Entry<ModuleName,MavenBuildProxy2> e : this.proxies.entrySet())
+            this.batch = new BatchingBuildProxy.Batch( Channel.current(), maven3Builder.getClass().getClassLoader() );
+            for (Entry<ModuleName,MavenBuildProxy2> e : maven3Builder.proxies.entrySet())
             {
-                e.setValue(maven3Builder.new FilterImpl(e.getValue(), maven3Builder.mavenBuildInformation));
-                executedMojosPerModule.put( e.getKey(), new CopyOnWriteArrayList<ExecutedMojo>() );
+                FilterImpl filter = (FilterImpl) e.getValue();
+                MavenBuildProxy2 proxy = new BatchingBuildProxy(filter, filter.core, batch);
+                modules.put( e.getKey(), new ModuleState( proxy, maven3Builder.reporters.get( e.getKey() ) ) );
             }
-            this.reporters.putAll( new HashMap<ModuleName, List<MavenReporter>>(maven3Builder.reporters) );
             this.eventLogger = new ExecutionEventLogger( new PrintStreamLogger( maven3Builder.listener.getLogger() ) );
         }
         
-        private MavenBuildProxy2 getMavenBuildProxy2(MavenProject mavenProject) {
-            for (Entry<ModuleName,MavenBuildProxy2> entry : proxies.entrySet()) {   
-               if (entry.getKey().compareTo( new ModuleName( mavenProject ) ) == 0) {
-                   return entry.getValue();
-               }
+        /**
+         * Finds the module of the project, or null if it isn't one of ours.
+         */
+        private ModuleState getModuleState(MavenProject mavenProject) {
+            ModuleState module = moduleStates.get( mavenProject );
+            if (module == null) {
+                // first event for this instance. forked executions bring their own copies of the project
+                module = modules.get( new ModuleName( mavenProject ) );
+                if (module != null)
+                    moduleStates.put( mavenProject, module );
             }
-            return null;
+            return module;
         }
         
         // FIME really used somewhere ???
@@ -280,21 +354,14 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
             return new PluginParameterExpressionEvaluator( session, mojoExecution );
         }
 
-        private List<MavenReporter> getMavenReporters(MavenProject mavenProject) {
-            return reporters.get( new ModuleName( mavenProject ) );
-        }        
-        
-        private void initMojoStartTime( MavenProject mavenProject) {
-            this.currentMojoStartPerModuleName.put( new ModuleName( mavenProject.getGroupId(),
-                                                                    mavenProject.getArtifactId() ),
-                                                    Long.valueOf( new Date().getTime() ) );
+        private static String getName(MavenProject mavenProject) {
+            return mavenProject.getGroupId() + ":" + mavenProject.getArtifactId();
         }
-        
-        private Long getMojoStartTime(MavenProject mavenProject) {
-            return currentMojoStartPerModuleName.get( new ModuleName( mavenProject.getGroupId(),
-                                                                      mavenProject.getArtifactId() ) );
+
+        private static String getName(MojoExecution mojoExecution) {
+            return mojoExecution.getArtifactId() + ":" + mojoExecution.getGoal() + " (" + mojoExecution.getExecutionId() + ")";
         }
-        
+
         /**
          * @see org.apache.maven.execution.ExecutionListener#projectDiscoveryStarted(org.apache.maven.execution.ExecutionEvent)
          */
@@ -306,6 +373,7 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
          * @see org.apache.maven.execution.ExecutionListener#sessionStarted(org.apache.maven.execution.ExecutionEvent)
          */
         public void sessionStarted( ExecutionEvent event ) {
+            maven3Builder.timeline.open( "session", event.getSession(), "Session" );
             this.eventLogger.sessionStarted( event );
         }
 
@@ -315,6 +383,7 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
         public void sessionEnded( ExecutionEvent event )  {
             maven3Builder.listener.getLogger().println( "sessionEnded" );
             this.eventLogger.sessionEnded( event );
+            maven3Builder.timeline.close( "session", event.getSession() );
         }
 
         /**
@@ -333,39 +402,49 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
         public void projectStarted( ExecutionEvent event ) {
             //maven3Builder.listener.getLogger().println( "projectStarted " + event.getProject().getGroupId() + ":"
             //                                                + event.getProject().getArtifactId() + ":" + event.getProject().getVersion() );
-            reccordProjectStarted( event );        
+            maven3Builder.timeline.open( "project", event.getProject(), getName( event.getProject() ) );
+            long startTime = maven3Builder.timeline.begin();
+            reccordProjectStarted( event );
+            maven3Builder.timeline.end( "hudson", "enterModule", startTime );
             this.eventLogger.projectStarted( event );
             
         }
         
         public void reccordProjectStarted( ExecutionEvent event ) {
             MavenProject mavenProject = event.getProject();
-            List<MavenReporter> mavenReporters = getMavenReporters( mavenProject );                
+            ModuleState module = getModuleState( mavenProject );
+            List<MavenReporter> mavenReporters = module.reporters;
             
-            MavenBuildProxy2 mavenBuildProxy2 = getMavenBuildProxy2( mavenProject );
+            MavenBuildProxy2 mavenBuildProxy2 = module.proxy;
             mavenBuildProxy2.start();
             
             
             if (mavenReporters != null) {
                 for (MavenReporter mavenReporter : mavenReporters) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "enterModule" );
                     try {
                         mavenReporter.enterModule( mavenBuildProxy2 ,mavenProject, maven3Builder.listener);
                     } catch ( InterruptedException e ) {
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }            
             
             if (mavenReporters != null) {
                 for (MavenReporter mavenReporter : mavenReporters) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "preBuild" );
                     try {
                         mavenReporter.preBuild( mavenBuildProxy2 ,mavenProject, maven3Builder.listener);
                     } catch ( InterruptedException e ) {
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }             
@@ -380,38 +459,48 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                                                             + event.getProject().getGroupId() + ":"
                                                             + event.getProject().getArtifactId() + ":"
                                                             + event.getProject().getVersion());
+            long startTime = maven3Builder.timeline.begin();
             reccordProjectSucceeded( event );
+            maven3Builder.timeline.end( "hudson", "leaveModule", startTime );
+            maven3Builder.timeline.close( "project", event.getProject() );
             this.eventLogger.projectSucceeded( event );
         }
         
         public void reccordProjectSucceeded( ExecutionEvent event ) {
-            MavenBuildProxy2 mavenBuildProxy2 = getMavenBuildProxy2( event.getProject() );
+            ModuleState module = getModuleState( event.getProject() );
+            MavenBuildProxy2 mavenBuildProxy2 = module.proxy;
             mavenBuildProxy2.end();
             mavenBuildProxy2.setResult( Result.SUCCESS );
             
             
-            List<MavenReporter> mavenReporters = getMavenReporters( event.getProject() );
+            List<MavenReporter> mavenReporters = module.reporters;
             
             if ( mavenReporters != null ) {
                 for ( MavenReporter mavenReporter : mavenReporters ) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "leaveModule" );
                     try {
                         mavenReporter.leaveModule( mavenBuildProxy2, event.getProject(), maven3Builder.listener);
                     } catch ( InterruptedException e ) {
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }             
             
             if ( mavenReporters != null ) {
                 for ( MavenReporter mavenReporter : mavenReporters ) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "postBuild" );
                     try {
                         mavenReporter.postBuild( mavenBuildProxy2, event.getProject(), maven3Builder.listener);
                     } catch ( InterruptedException e ) {
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }
@@ -425,37 +514,47 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
             maven3Builder.listener.getLogger().println("projectFailed " + event.getProject().getGroupId() 
                                                                         + ":"  + event.getProject().getArtifactId()
                                                                         + ":" + event.getProject().getVersion());
+            long startTime = maven3Builder.timeline.begin();
             reccordProjectFailed( event );
+            maven3Builder.timeline.end( "hudson", "leaveModule", startTime );
+            maven3Builder.timeline.close( "project", event.getProject() );
             this.eventLogger.projectFailed( event );
         }
         
         public void reccordProjectFailed( ExecutionEvent event ) {
-            MavenBuildProxy2 mavenBuildProxy2 = getMavenBuildProxy2( event.getProject() );
+            ModuleState module = getModuleState( event.getProject() );
+            MavenBuildProxy2 mavenBuildProxy2 = module.proxy;
             mavenBuildProxy2.end();
             mavenBuildProxy2.setResult( Result.FAILURE );
             MavenProject mavenProject = event.getProject();
-            List<MavenReporter> mavenReporters = getMavenReporters( mavenProject );
+            List<MavenReporter> mavenReporters = module.reporters;
             
             if ( mavenReporters != null ) {
                 for ( MavenReporter mavenReporter : mavenReporters ) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "leaveModule" );
                     try {
                         mavenReporter.leaveModule( mavenBuildProxy2, mavenProject, maven3Builder.listener);
                     } catch ( InterruptedException e ) {
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }             
             
             if ( mavenReporters != null ) {
                 for ( MavenReporter mavenReporter : mavenReporters ) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "postBuild" );
                     try {
                         mavenReporter.postBuild( mavenBuildProxy2, mavenProject, maven3Builder.listener);
                     } catch ( InterruptedException e ) {
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }
@@ -480,14 +579,18 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
             //                                                          + event.getMojoExecution().getArtifactId() + ":"
             //                                                          + event.getMojoExecution().getVersion()
             //                                                          + "(" + event.getMojoExecution().getExecutionId() + ")");
+            long startTime = maven3Builder.timeline.begin();
             reccordMojoStarted( event );
+            maven3Builder.timeline.end( "hudson", "preExecute", startTime );
+            maven3Builder.timeline.open( "mojo", event.getMojoExecution(), getName( event.getMojoExecution() ) );
             this.eventLogger.mojoStarted( event );
         }
         
         public void reccordMojoStarted( ExecutionEvent event ) {
-            initMojoStartTime( event.getProject() );
-            
             MavenProject mavenProject = event.getProject();
+            ModuleState module = getModuleState( mavenProject );
+            module.mojoStartTime = System.currentTimeMillis();
+            
             XmlPlexusConfiguration xmlPlexusConfiguration = new XmlPlexusConfiguration( event.getMojoExecution().getConfiguration() );
 
             Mojo mojo = null;//getMojo( event.getMojoExecution(), event.getSession() );
@@ -496,18 +599,21 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                 new MojoInfo( event.getMojoExecution(), mojo, xmlPlexusConfiguration,
                               getExpressionEvaluator( event.getSession(), event.getMojoExecution() ) );
 
-            List<MavenReporter> mavenReporters = getMavenReporters( mavenProject );                
+            List<MavenReporter> mavenReporters = module.reporters;
             
-            MavenBuildProxy2 mavenBuildProxy2 = getMavenBuildProxy2( mavenProject );
+            MavenBuildProxy2 mavenBuildProxy2 = module.proxy;
             
             if (mavenReporters != null) {
                 for (MavenReporter mavenReporter : mavenReporters) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "preExecute" );
                     try {
                         mavenReporter.preExecute( mavenBuildProxy2, mavenProject, mojoInfo, maven3Builder.listener);
                     } catch ( InterruptedException e ) {
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }            
@@ -521,14 +627,18 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
             //                                           + event.getMojoExecution().getArtifactId() + ":"
             //                                           + event.getMojoExecution().getVersion()
             //                                           + "(" + event.getMojoExecution().getExecutionId() + ")");
+            maven3Builder.timeline.close( "mojo", event.getMojoExecution() );
+            long startTime = maven3Builder.timeline.begin();
             reccordMojoSucceeded( event );
+            maven3Builder.timeline.end( "hudson", "postExecute", startTime );
             this.eventLogger.mojoSucceeded( event );
         }
         
         public void reccordMojoSucceeded( ExecutionEvent event ) {
-            Long startTime = getMojoStartTime( event.getProject() );
-            Date endTime = new Date();
             MavenProject mavenProject = event.getProject();
+            ModuleState module = getModuleState( mavenProject );
+            long startTime = module.mojoStartTime;
+            long endTime = System.currentTimeMillis();
             XmlPlexusConfiguration xmlPlexusConfiguration = new XmlPlexusConfiguration( event.getMojoExecution().getConfiguration() );
 
             Mojo mojo = null;//getMojo( event.getMojoExecution(), event.getSession() );
@@ -539,9 +649,8 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
 
             try {
                 ExecutedMojo executedMojo =
-                    new ExecutedMojo( mojoInfo, startTime == null ? 0 : endTime.getTime() - startTime.longValue() );
-                this.executedMojosPerModule.get( new ModuleName( mavenProject.getGroupId(),
-                                                                 mavenProject.getArtifactId() ) ).add( executedMojo );
+                    new ExecutedMojo( mojoInfo, startTime < 0 ? 0 : endTime - startTime );
+                module.executedMojos.add( executedMojo );
                 
             } catch ( Exception e ) {
                 // ignoring this
@@ -549,14 +658,15 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                                                                 + e.getMessage() );
             }
             
-            List<MavenReporter> mavenReporters = getMavenReporters( mavenProject );                
+            List<MavenReporter> mavenReporters = module.reporters;
             
-            MavenBuildProxy2 mavenBuildProxy2 = getMavenBuildProxy2( mavenProject );
+            MavenBuildProxy2 mavenBuildProxy2 = module.proxy;
             
-            mavenBuildProxy2.setExecutedMojos( this.executedMojosPerModule.get( new ModuleName( event.getProject() ) ) );
+            mavenBuildProxy2.setExecutedMojos( module.executedMojos );
             
             if (mavenReporters != null) {
                 for (MavenReporter mavenReporter : mavenReporters) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "postExecute" );
                     try {
                         mavenReporter.postExecute( mavenBuildProxy2, mavenProject, mojoInfo, maven3Builder.listener, null);
                     } catch ( InterruptedException e ) {
@@ -564,6 +674,8 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                     }
                     catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }
@@ -577,14 +689,18 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                                                        + event.getMojoExecution().getArtifactId() + ":"
                                                        + event.getMojoExecution().getVersion()
                                                        + "(" + event.getMojoExecution().getExecutionId() + ")");
+            maven3Builder.timeline.close( "mojo", event.getMojoExecution() );
+            long startTime = maven3Builder.timeline.begin();
             reccordMojoFailed( event );
+            maven3Builder.timeline.end( "hudson", "postExecute", startTime );
             this.eventLogger.mojoFailed( event );
         }
         
         public void reccordMojoFailed( ExecutionEvent event ) {
-            Long startTime = getMojoStartTime( event.getProject() );
-            Date endTime = new Date();
             MavenProject mavenProject = event.getProject();
+            ModuleState module = getModuleState( mavenProject );
+            long startTime = module.mojoStartTime;
+            long endTime = System.currentTimeMillis();
             XmlPlexusConfiguration xmlPlexusConfiguration = new XmlPlexusConfiguration( event.getMojoExecution().getConfiguration() );
 
             Mojo mojo = null;//getMojo( event.getMojoExecution(), event.getSession() );
@@ -595,23 +711,23 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
 
             try {
                 ExecutedMojo executedMojo =
-                    new ExecutedMojo( mojoInfo, startTime == null ? 0 : endTime.getTime() - startTime.longValue() );
-                this.executedMojosPerModule.get( new ModuleName( mavenProject.getGroupId(),
-                                                                 mavenProject.getArtifactId() ) ).add( executedMojo );
+                    new ExecutedMojo( mojoInfo, startTime < 0 ? 0 : endTime - startTime );
+                module.executedMojos.add( executedMojo );
             } catch ( Exception e ) {
                 // ignoring this
                 maven3Builder.listener.getLogger().println( "ignoring exception during new ExecutedMojo "
                                                                 + e.getMessage() );
             }
             
-            List<MavenReporter> mavenReporters = getMavenReporters( mavenProject );                
+            List<MavenReporter> mavenReporters = module.reporters;
             
-            MavenBuildProxy2 mavenBuildProxy2 = getMavenBuildProxy2( mavenProject );
+            MavenBuildProxy2 mavenBuildProxy2 = module.proxy;
             
-            mavenBuildProxy2.setExecutedMojos( this.executedMojosPerModule.get( new ModuleName( event.getProject() ) ) );
+            mavenBuildProxy2.setExecutedMojos( module.executedMojos );
             
             if (mavenReporters != null) {
                 for (MavenReporter mavenReporter : mavenReporters) {
+                    long t = maven3Builder.reporterCosts.begin( mavenReporter, "postExecute" );
                     try {
                         // http://issues.hudson-ci.org/browse/HUDSON-8493
                         // with maven 3.0.2 see http://jira.codehaus.org/browse/MNG-4922
@@ -625,6 +741,8 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                         e.printStackTrace();
                     } catch ( IOException e ) {
                         e.printStackTrace();
+                    } finally {
+                        maven3Builder.reporterCosts.end( t );
                     }
                 }
             }            
@@ -639,7 +757,10 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                                                        + event.getMojoExecution().getArtifactId() + ":"
                                                        + event.getMojoExecution().getVersion()
                                                        + "(" + event.getMojoExecution().getExecutionId() + ")");
+            maven3Builder.timeline.open( "fork", event.getMojoExecution(), getName( event.getMojoExecution() ) );
+            long startTime = maven3Builder.timeline.begin();
             reccordMojoStarted( event );
+            maven3Builder.timeline.end( "hudson", "preExecute", startTime );
         }
 
         /**
@@ -650,7 +771,10 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                                                        + event.getMojoExecution().getArtifactId() + ":"
                                                        + event.getMojoExecution().getVersion()
                                                        + "(" + event.getMojoExecution().getExecutionId() + ")");
+            long startTime = maven3Builder.timeline.begin();
             reccordMojoSucceeded( event );
+            maven3Builder.timeline.end( "hudson", "postExecute", startTime );
+            maven3Builder.timeline.close( "fork", event.getMojoExecution() );
         }
 
         /**
@@ -661,7 +785,10 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                                                        + event.getMojoExecution().getArtifactId() + ":"
                                                        + event.getMojoExecution().getVersion()
                                                        + "(" + event.getMojoExecution().getExecutionId() + ")");  
+            long startTime = maven3Builder.timeline.begin();
             reccordMojoFailed( event );
+            maven3Builder.timeline.end( "hudson", "postExecute", startTime );
+            maven3Builder.timeline.close( "fork", event.getMojoExecution() );
         }
 
         /**
@@ -670,7 +797,10 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
         public void forkedProjectStarted( ExecutionEvent event ) {
             maven3Builder.listener.getLogger().println( "forkedProjectStarted " + event.getProject().getGroupId() + ":"
                                                         + event.getProject().getArtifactId() + event.getProject().getVersion() );
-            reccordProjectStarted( event ); 
+            maven3Builder.timeline.open( "project", event.getProject(), getName( event.getProject() ) + " (forked)" );
+            long startTime = maven3Builder.timeline.begin();
+            reccordProjectStarted( event );
+            maven3Builder.timeline.end( "hudson", "enterModule", startTime );
             this.eventLogger.forkedProjectStarted( event );
         }
 
@@ -682,7 +812,10 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
                                                         + event.getProject().getGroupId() + ":"
                                                         + event.getProject().getArtifactId()
                                                         + event.getProject().getVersion());
+            long startTime = maven3Builder.timeline.begin();
             reccordProjectSucceeded( event );
+            maven3Builder.timeline.end( "hudson", "leaveModule", startTime );
+            maven3Builder.timeline.close( "project", event.getProject() );
             this.eventLogger.forkedProjectSucceeded( event );
         }
 
@@ -693,13 +826,29 @@ public class Maven3Builder extends AbstractMavenBuilder implements DelegatingCal
             maven3Builder.listener.getLogger().println("forkedProjectFailed " + event.getProject().getGroupId() 
                                                        + ":"  + event.getProject().getArtifactId()
                                                        + ":" + event.getProject().getVersion());
+            long startTime = maven3Builder.timeline.begin();
             reccordProjectFailed( event );
+            maven3Builder.timeline.end( "hudson", "leaveModule", startTime );
+            maven3Builder.timeline.close( "project", event.getProject() );
         }        
         
     }    
     
     public static boolean markAsSuccess;
 
+    /**
+     * Keep the Plexus container and the Maven components alive between builds that run
+     * in the same cached Maven 3 process. Per-build state (the execution request, the listener
+     * and the logger target and threshold) is still set up anew for every build.
+     *
+     * <p>
+     * The container caches plugin and extension class realms by version, so it is dropped after
+     * a build that used a SNAPSHOT plugin or extension. A release plugin that was redeployed
+     * under the same version, or whose own dependencies changed, still keeps its old classes
+     * until the process is retired.
+     */
+    public static boolean REUSE_CONTAINER = Boolean.getBoolean(Maven3Builder.class.getName()+".reuseContainer");
+
     private static final long serialVersionUID = 1L;    
     
 }
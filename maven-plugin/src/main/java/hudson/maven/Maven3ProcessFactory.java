@@ -25,7 +25,6 @@ import hudson.model.JDK;
 import hudson.model.Node;
 import hudson.model.Run.RunnerAbortedException;
 import hudson.model.TaskListener;
-import hudson.remoting.Callable;
 import hudson.remoting.Which;
 import hudson.tasks.Maven.MavenInstallation;
 import hudson.util.ArgumentListBuilder;
@@ -47,11 +46,20 @@ public class Maven3ProcessFactory extends AbstractMavenProcessFactory implements
     Maven3ProcessFactory(MavenModuleSet mms, Launcher launcher, EnvVars envVars, FilePath workDir) {
         super( mms, launcher, envVars, workDir );
     }
+
+    Maven3ProcessFactory(MavenModuleSet mms, Launcher launcher, EnvVars envVars, FilePath workDir, Node node) {
+        super( mms, launcher, envVars, workDir, node );
+    }
+
+    Maven3ProcessFactory(Launcher launcher, EnvVars envVars, FilePath workDir, Node node, String mavenOpts, MavenInstallation installation, JDK jdk) {
+        super( launcher, envVars, workDir, node, mavenOpts, installation, jdk );
+    }
+
     /**
      * Builds the command line argument list to launch the maven process.
      *
      */
-    protected ArgumentListBuilder buildMavenAgentCmdLine(BuildListener listener,int tcpPort) throws IOException, InterruptedException {
+    protected ArgumentListBuilder buildMavenAgentCmdLine(BuildListener listener,int tcpPort,NodeInfo nodeInfo) throws IOException, InterruptedException {
         MavenInstallation mvn = getMavenInstallation(listener);
         if(mvn==null) {
             listener.error("Maven version is not configured for this project. Can't determine which Maven to run");
@@ -63,7 +71,7 @@ public class Maven3ProcessFactory extends AbstractMavenProcessFactory implements
         }
 
         // find classworlds.jar
-        String classWorldsJar = getLauncher().getChannel().call(new GetClassWorldsJar(mvn.getHome(),listener));
+        String classWorldsJar = findClassWorldsJar(nodeInfo,mvn.getHome(),listener);
 
         boolean isMaster = getCurrentNode()== Hudson.getInstance();
         FilePath slaveRoot=null;
@@ -95,7 +103,7 @@ public class Maven3ProcessFactory extends AbstractMavenProcessFactory implements
         args.add(mvn.getHome());
 
         // remoting.jar
-        String remotingJar = getLauncher().getChannel().call(new GetRemotingJar());
+        String remotingJar = getRemotingJar(nodeInfo);
         if(remotingJar==null) {// this shouldn't be possible, but there are still reports indicating this, so adding a probe here.
             listener.error("Failed to determine the location of slave.jar");
             throw new RunnerAbortedException();
@@ -115,34 +123,17 @@ public class Maven3ProcessFactory extends AbstractMavenProcessFactory implements
     /**
      * Finds classworlds.jar
      */
-    private static final class GetClassWorldsJar implements Callable<String,IOException> {
-        private final String mvnHome;
-        private final TaskListener listener;
-
-        private GetClassWorldsJar(String mvnHome, TaskListener listener) {
-            this.mvnHome = mvnHome;
-            this.listener = listener;
-        }
-
-        public String call() throws IOException {
-            File home = new File(mvnHome);
-            if (MavenProcessFactory.debug)
-                listener.getLogger().println("Using mvnHome: "+ mvnHome);
-            File bootDir = new File(home, "boot");
-            File[] classworlds = bootDir.listFiles(CLASSWORLDS_FILTER);
-            if(classworlds==null || classworlds.length==0) {
-                // Maven 2.0.6 puts it to a different place
-                bootDir = new File(home, "boot");
-                classworlds = bootDir.listFiles(CLASSWORLDS_FILTER);
-                if(classworlds==null || classworlds.length==0) {
-                    // FIXME use messages
-                    //listener.error(Messages.MavenProcessFactory_ClassWorldsNotFound(home));
-                    listener.error("classworld not found");
-                    throw new RunnerAbortedException();
-                }
-            }
-            return classworlds[0].getAbsolutePath();
+    private String findClassWorldsJar(NodeInfo nodeInfo, String mvnHome, TaskListener listener) {
+        if (MavenProcessFactory.debug)
+            listener.getLogger().println("Using mvnHome: "+ mvnHome);
+        String classworlds = findBootJar(nodeInfo, mvnHome, "boot", CLASSWORLDS_FILTER);
+        if(classworlds==null) {
+            // FIXME use messages
+            //listener.error(Messages.MavenProcessFactory_ClassWorldsNotFound(home));
+            listener.error("classworld not found");
+            throw new RunnerAbortedException();
         }
+        return classworlds;
     }
     /**
      * Locates classworlds jar file.
@@ -292,14 +292,14 @@ public class MavenBuild extends AbstractMavenBuild<MavenModule,MavenBuild> {
             this.reporters = reporters;
         }
 
-        private class FilterImpl extends MavenBuildProxy.Filter<MavenBuildProxy> implements Serializable {
+        private class FilterImpl extends MavenBuildProxy.CountingFilter<MavenBuildProxy> implements Serializable {
             public FilterImpl(MavenBuildProxy buildProxy) {
                 super(buildProxy);
             }
 
             @Override
             public void executeAsync(final BuildCallable<?,?> program) throws IOException {
-                futures.add(Channel.current().callAsync(new AsyncInvoker(core,program)));
+                asyncCalls.submit(new AsyncInvoker(core,program));
             }
 
             public MavenBuildInformation getMavenBuildInformation()
@@ -313,22 +313,49 @@ public class MavenBuild extends AbstractMavenBuild<MavenModule,MavenBuild> {
 
         @Override
         void preBuild(MavenSession session, ReactorManager rm, EventDispatcher dispatcher) throws BuildFailureException, LifecycleExecutionException, IOException, InterruptedException {
-            for (MavenReporter r : reporters)
-                r.preBuild(buildProxy,rm.getTopLevelProject(),listener);
+            for (MavenReporter r : reporters) {
+                long t = reporterCosts.begin(r,"preBuild");
+                try {
+                    r.preBuild(buildProxy,rm.getTopLevelProject(),listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+            }
         }
 
         @Override
         void postBuild(MavenSession session, ReactorManager rm, EventDispatcher dispatcher) throws BuildFailureException, LifecycleExecutionException, IOException, InterruptedException {
             buildProxy.setExecutedMojos(executedMojos);
-            for (MavenReporter r : reporters)
-                r.postBuild(buildProxy,rm.getTopLevelProject(),listener);
+            for (MavenReporter r : reporters) {
+                long t = reporterCosts.begin(r,"postBuild");
+                try {
+                    r.postBuild(buildProxy,rm.getTopLevelProject(),listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+            }
+        }
+
+        @Override
+        void recordStatistics() {
+            asyncCalls.record(buildProxy,false);
+            timeline.record(buildProxy,false,listener);
+            reporterCosts.record(buildProxy,false,listener);
         }
 
         @Override
         void preExecute(MavenProject project, MojoInfo info) throws IOException, InterruptedException, AbortException {
-            for (MavenReporter r : reporters)
-                if(!r.preExecute(buildProxy,project,info,listener))
+            for (MavenReporter r : reporters) {
+                long t = reporterCosts.begin(r,"preExecute");
+                boolean ok;
+                try {
+                    ok = r.preExecute(buildProxy,project,info,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new AbortException(r+" failed");
+            }
 
             startTime = System.currentTimeMillis();
         }
@@ -337,30 +364,62 @@ public class MavenBuild extends AbstractMavenBuild<MavenModule,MavenBuild> {
         void postExecute(MavenProject project, MojoInfo info, Exception exception) throws IOException, InterruptedException, AbortException {
             executedMojos.add(new ExecutedMojo(info,System.currentTimeMillis()-startTime));
 
-            for (MavenReporter r : reporters)
-                if(!r.postExecute(buildProxy,project,info,listener,exception))
+            for (MavenReporter r : reporters) {
+                long t = reporterCosts.begin(r,"postExecute");
+                boolean ok;
+                try {
+                    ok = r.postExecute(buildProxy,project,info,listener,exception);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new AbortException(r+" failed");
+            }
         }
 
         @Override
         void onReportGenerated(MavenProject project, MavenReportInfo report) throws IOException, InterruptedException, AbortException {
-            for (MavenReporter r : reporters)
-                if(!r.reportGenerated(buildProxy,project,report,listener))
+            for (MavenReporter r : reporters) {
+                long t = reporterCosts.begin(r,"reportGenerated");
+                boolean ok;
+                try {
+                    ok = r.reportGenerated(buildProxy,project,report,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new AbortException(r+" failed");
+            }
         }
 
         @Override
         void preModule(MavenProject project) throws InterruptedException, IOException, AbortException {
-            for (MavenReporter r : reporters)
-                if(!r.enterModule(buildProxy,project,listener))
+            for (MavenReporter r : reporters) {
+                long t = reporterCosts.begin(r,"enterModule");
+                boolean ok;
+                try {
+                    ok = r.enterModule(buildProxy,project,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new AbortException(r+" failed");
+            }
         }
 
         @Override
         void postModule(MavenProject project) throws InterruptedException, IOException, AbortException {
-            for (MavenReporter r : reporters)
-                if(!r.leaveModule(buildProxy,project,listener))
+            for (MavenReporter r : reporters) {
+                long t = reporterCosts.begin(r,"leaveModule");
+                boolean ok;
+                try {
+                    ok = r.leaveModule(buildProxy,project,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new AbortException(r+" failed");
+            }
         }
 
         private static final long serialVersionUID = 1L;
@@ -536,6 +595,29 @@ public class MavenBuild extends AbstractMavenBuild<MavenModule,MavenBuild> {
     
     
 
+    /**
+     * {@link MavenBuildProxy2} for a module that is built on its own with Maven 3.
+     *
+     * <p>
+     * Unlike {@link ProxyImpl2}, there's no aggregator build to report back to,
+     * and the console output already goes to this build, so the module
+     * notifications don't need to do anything.
+     */
+    class StandaloneProxyImpl extends ProxyImpl implements MavenBuildProxy2 {
+        public void start() {
+        }
+
+        public void end() {
+        }
+
+        public void appendLastLog() {
+        }
+
+        private Object writeReplace() {
+            return Channel.current().export(MavenBuildProxy2.class,this);
+        }
+    }
+
     private class RunnerImpl extends AbstractRunner {
         private List<MavenReporter> reporters;
 
@@ -565,31 +647,26 @@ public class MavenBuild extends AbstractMavenBuild<MavenModule,MavenBuild> {
             
             mvn = mvn.forEnvironment(envVars).forNode(Computer.currentComputer().getNode(), listener);
             
-            MavenInformation mavenInformation = getModuleRoot().act( new MavenVersionCallable( mvn.getHome() ));
+            MavenInformation mavenInformation = MavenInformationCache.get( getModuleRoot(), mvn.getHome() );
             
             String mavenVersion = mavenInformation.getVersion();
             
             listener.getLogger().println("Found mavenVersion " + mavenVersion + " from file " + mavenInformation.getVersionResourcePath());
             
-            ProcessCache.MavenProcess process = null;
+            ProcessCache.Factory factory;
             
             boolean maven3orLater = new ComparableVersion (mavenVersion).compareTo( new ComparableVersion ("3.0") ) >= 0;
            
             if ( maven3orLater )
             {
-                process =
-                    MavenBuild.mavenProcessCache.get( launcher.getChannel(), listener,
-                                                      new Maven3ProcessFactory( getParent().getParent(), launcher,
-                                                                                envVars, null ) );
+                factory = new Maven3ProcessFactory( getParent().getParent(), launcher, envVars, getModuleRoot() );
             }
             else
             {
-                process =
-                    MavenBuild.mavenProcessCache.get( launcher.getChannel(), listener,
-                                                      new MavenProcessFactory( getParent().getParent(), launcher,
-                                                                               envVars, null ) );
+                factory = new MavenProcessFactory( getParent().getParent(), launcher, envVars, getModuleRoot() );
             }
 
+            ProcessCache.MavenProcess process = MavenBuild.mavenProcessCache.get( launcher.getChannel(), listener, factory );
 
             ArgumentListBuilder margs = new ArgumentListBuilder("-N","-B");
             if(mms.usesPrivateRepository())
@@ -604,39 +681,60 @@ public class MavenBuild extends AbstractMavenBuild<MavenModule,MavenBuild> {
             systemProps.put("hudson.build.number",String.valueOf(getNumber()));
 
             boolean normalExit = false;
-            if (maven3orLater)
-            { 
-                // FIXME here for maven 3 builds
-                return Result.ABORTED;
-            }
-            else
-            {
-                try {
-                    Result r = process.call(new Builder(
+            try {
+                AbstractMavenBuilder builder;
+                if (maven3orLater) {
+                    builder = new Maven3Builder(
+                        listener,getProject().getModuleName(),new StandaloneProxyImpl(),
+                        reporters, margs.toList(), systemProps, new MavenBuildInformation(mavenVersion));
+                } else {
+                    builder = new Builder(
                         listener,new ProxyImpl(),
-                        reporters.toArray(new MavenReporter[reporters.size()]), margs.toList(), systemProps));
-                    normalExit = true;
-                    return r;
-                } finally {
-                    if(normalExit)  process.recycle();
-                    else            process.discard();
-    
-                    // tear down in reverse order
-                    boolean failed=false;
-                    for( int i=buildEnvironments.size()-1; i>=0; i-- ) {
-                        if (!buildEnvironments.get(i).tearDown(MavenBuild.this,listener)) {
-                            failed=true;
-                        }                    
+                        reporters.toArray(new MavenReporter[reporters.size()]), margs.toList(), systemProps);
+                }
+
+                Result r;
+                while (true) {
+                    try {
+                        r = process.call(builder);
+                        break;
+                    } catch (ProcessCache.StaleProcessException e) {
+                        // it died while it was cached, and the build never got to it
+                        listener.getLogger().println(Messages.ProcessCache_Stale());
+                        ProcessCache.MavenProcess stale = process;
+                        process = MavenBuild.mavenProcessCache.get( launcher.getChannel(), listener, factory );
+                        stale.discard();
                     }
-                    // WARNING The return in the finally clause will trump any return before
-                    if (failed) return Result.FAILURE;
                 }
+                normalExit = true;
+                return r;
+            } finally {
+                if(normalExit)  process.recycle();
+                else            process.discard();
+
+                // tear down in reverse order
+                boolean failed=false;
+                for( int i=buildEnvironments.size()-1; i>=0; i-- ) {
+                    if (!buildEnvironments.get(i).tearDown(MavenBuild.this,listener)) {
+                        failed=true;
+                    }                    
+                }
+                // WARNING The return in the finally clause will trump any return before
+                if (failed) return Result.FAILURE;
             }
         }
 
         public void post2(BuildListener listener) throws Exception {
-            for (MavenReporter reporter : reporters)
-                reporter.end(MavenBuild.this,launcher,listener);
+            ReporterCosts costs = new ReporterCosts();
+            for (MavenReporter reporter : reporters) {
+                long t = costs.begin(reporter,"end");
+                try {
+                    reporter.end(MavenBuild.this,launcher,listener);
+                } finally {
+                    costs.end(t);
+                }
+            }
+            costs.record(MavenBuild.this);
         }
 
     }
@@ -260,4 +260,96 @@ public interface MavenBuildProxy {
             private static final long serialVersionUID = 1L;
         }
     }
+
+    /**
+     * {@link Filter} that attributes every call it passes on to the reporter callback
+     * running on the current thread, as each of them waits for the master.
+     *
+     * @see ReporterCosts#countRoundTrip()
+     */
+    /*package*/ static abstract class CountingFilter<CORE extends MavenBuildProxy> extends Filter<CORE> {
+        protected CountingFilter(CORE core) {
+            super(core);
+        }
+
+        @Override
+        public <V, T extends Throwable> V execute(BuildCallable<V, T> program) throws T, IOException, InterruptedException {
+            ReporterCosts.countRoundTrip();
+            return super.execute(program);
+        }
+
+        @Override
+        public FilePath getRootDir() {
+            ReporterCosts.countRoundTrip();
+            return super.getRootDir();
+        }
+
+        @Override
+        public FilePath getProjectRootDir() {
+            ReporterCosts.countRoundTrip();
+            return super.getProjectRootDir();
+        }
+
+        @Override
+        public FilePath getModuleSetRootDir() {
+            ReporterCosts.countRoundTrip();
+            return super.getModuleSetRootDir();
+        }
+
+        @Override
+        public FilePath getArtifactsDir() {
+            ReporterCosts.countRoundTrip();
+            return super.getArtifactsDir();
+        }
+
+        @Override
+        public void setResult(Result result) {
+            ReporterCosts.countRoundTrip();
+            super.setResult(result);
+        }
+
+        @Override
+        public Calendar getTimestamp() {
+            ReporterCosts.countRoundTrip();
+            return super.getTimestamp();
+        }
+
+        @Override
+        public long getMilliSecsSinceBuildStart() {
+            ReporterCosts.countRoundTrip();
+            return super.getMilliSecsSinceBuildStart();
+        }
+
+        @Override
+        public boolean isArchivingDisabled() {
+            ReporterCosts.countRoundTrip();
+            return super.isArchivingDisabled();
+        }
+
+        @Override
+        public void registerAsProjectAction(MavenReporter reporter) {
+            ReporterCosts.countRoundTrip();
+            super.registerAsProjectAction(reporter);
+        }
+
+        @Override
+        public void registerAsProjectAction(MavenProjectActionBuilder builder) {
+            ReporterCosts.countRoundTrip();
+            super.registerAsProjectAction(builder);
+        }
+
+        @Override
+        public void registerAsAggregatedProjectAction(MavenReporter reporter) {
+            ReporterCosts.countRoundTrip();
+            super.registerAsAggregatedProjectAction(reporter);
+        }
+
+        @Override
+        public void setExecutedMojos(List<ExecutedMojo> executedMojos) {
+            ReporterCosts.countRoundTrip();
+            super.setExecutedMojos(executedMojos);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
 }
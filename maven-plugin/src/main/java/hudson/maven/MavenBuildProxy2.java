@@ -64,4 +64,28 @@ public interface MavenBuildProxy2 extends MavenBuildProxy {
             core.appendLastLog();
         }
     }
+
+    /**
+     * {@link MavenBuildProxy.CountingFilter} for {@link MavenBuildProxy2}.
+     */
+    /*package*/ static abstract class CountingFilter<CORE extends MavenBuildProxy2> extends MavenBuildProxy.CountingFilter<CORE> implements MavenBuildProxy2 {
+        protected CountingFilter(CORE core) {
+            super(core);
+        }
+
+        public void start() {
+            ReporterCosts.countRoundTrip();
+            core.start();
+        }
+
+        public void end() {
+            ReporterCosts.countRoundTrip();
+            core.end();
+        }
+
+        public void appendLastLog() {
+            ReporterCosts.countRoundTrip();
+            core.appendLastLog();
+        }
+    }
 }
@@ -21,7 +21,6 @@ import hudson.model.Result;
 import hudson.remoting.Callable;
 import hudson.remoting.Channel;
 import hudson.remoting.DelegatingCallable;
-import hudson.remoting.Future;
 import hudson.util.IOException2;
 
 import java.io.IOException;
@@ -29,10 +28,8 @@ import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
 
 import org.apache.maven.BuildFailureException;
 import org.apache.maven.execution.MavenSession;
@@ -42,6 +39,7 @@ import org.apache.maven.lifecycle.LifecycleExecutorListener;
 import org.apache.maven.monitor.event.EventDispatcher;
 import org.apache.maven.plugin.Mojo;
 import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.reporting.MavenReport;
 import org.codehaus.classworlds.NoSuchRealmException;
@@ -78,7 +76,22 @@ public abstract class MavenBuilder extends AbstractMavenBuilder implements Deleg
      * Record all asynchronous executions as they are scheduled,
      * to make sure they are all completed before we finish.
      */
-    protected transient /*final*/ List<Future<?>> futures;
+    /*package*/ transient /*final*/ AsyncCallWindow asyncCalls;
+
+    /**
+     * {@link AsyncCallWindow#MAX_IN_FLIGHT} at master.
+     */
+    private final int maxAsyncCalls = AsyncCallWindow.MAX_IN_FLIGHT;
+
+    /**
+     * Where the time of this build goes.
+     */
+    /*package*/ transient /*final*/ ExecutionTimeline timeline;
+
+    /**
+     * What the {@link MavenReporter} callbacks of this build cost.
+     */
+    /*package*/ transient /*final*/ ReporterCosts reporterCosts;
 
     protected MavenBuilder(BuildListener listener, List<String> goals, Map<String, String> systemProps) {
         super( listener, goals, systemProps );
@@ -119,6 +132,12 @@ public abstract class MavenBuilder extends AbstractMavenBuilder implements Deleg
      */
     abstract void onReportGenerated(MavenProject project, MavenReportInfo report) throws IOException, InterruptedException, AbortException;
 
+    /**
+     * Records {@link #asyncCalls} statistics, {@link #timeline} and {@link #reporterCosts} with the build.
+     * Called however the build ended, so that failed and aborted builds have them too.
+     */
+    abstract void recordStatistics();
+
     private Class<?> pluginManagerInterceptorClazz;
     
     private Class<?> lifecycleInterceptorClazz;
@@ -132,9 +151,11 @@ public abstract class MavenBuilder extends AbstractMavenBuilder implements Deleg
         // and not restore it !
         ClassLoader mavenJailProcessClassLoader = Thread.currentThread().getContextClassLoader();        
         
+        asyncCalls = new AsyncCallWindow(listener,maxAsyncCalls);
+        timeline = new ExecutionTimeline();
+        reporterCosts = new ReporterCosts();
         try {
 
-            futures = new ArrayList<Future<?>>();
             Adapter a = new Adapter(this);
             callSetListenerWithReflectOnInterceptors( a, mavenJailProcessClassLoader );
             
@@ -145,38 +166,23 @@ public abstract class MavenBuilder extends AbstractMavenBuilder implements Deleg
             
             markAsSuccess = false;
 
-            // working around NPE when someone puts a null value into systemProps.
-            for (Map.Entry<String,String> e : systemProps.entrySet()) {
-                if (e.getValue()==null)
-                    throw new IllegalArgumentException("System property "+e.getKey()+" has a null value");
-                System.getProperties().put(e.getKey(), e.getValue());
-            }
+            resetSystemProperties();
 
             listener.getLogger().println(formatArgs(goals));
+            long launchTime = timeline.begin();
             int r = Main.launch(goals.toArray(new String[goals.size()]));
+            timeline.end("maven","Maven",launchTime);
 
             // now check the completion status of async ops
-            boolean messageReported = false;
             long startTime = System.nanoTime();
-            for (Future<?> f : futures) {
-                try {
-                    if(!f.isDone() && !messageReported) {
-                        messageReported = true;
-                        listener.getLogger().println(Messages.MavenBuilder_Waiting());
-                    }
-                    f.get();
-                } catch (InterruptedException e) {
-                    // attempt to cancel all asynchronous tasks
-                    for (Future<?> g : futures)
-                        g.cancel(true);
-                    listener.getLogger().println(Messages.MavenBuilder_Aborted());
-                    return Result.ABORTED;
-                } catch (ExecutionException e) {
-                    e.printStackTrace(listener.error(Messages.MavenBuilder_AsyncFailed()));
-                }
+            try {
+                asyncCalls.drain();
+            } catch (InterruptedException e) {
+                listener.getLogger().println(Messages.MavenBuilder_Aborted());
+                return Result.ABORTED;
             }
+            timeline.end("hudson","Waiting for asynchronous executions",startTime);
             a.overheadTime += System.nanoTime()-startTime;
-            futures.clear();
 
             if(profile) {
                 NumberFormat n = NumberFormat.getInstance();
@@ -211,6 +217,9 @@ public abstract class MavenBuilder extends AbstractMavenBuilder implements Deleg
             //PluginManagerInterceptor.setListener(null);
             //LifecycleExecutorInterceptor.setListener(null);
             callSetListenerWithReflectOnInterceptorsQuietly( null, mavenJailProcessClassLoader );
+            // the process may be recycled, so don't let the flag leak into the next build
+            markAsSuccess = false;
+            recordStatistics();
         }
     }
 
@@ -293,22 +302,24 @@ public abstract class MavenBuilder extends AbstractMavenBuilder implements Deleg
         }
 
         public void preBuild(MavenSession session, ReactorManager rm, EventDispatcher dispatcher) throws BuildFailureException, LifecycleExecutionException, IOException, InterruptedException {
+            listener.timeline.open("session",session,"Session");
             long startTime = System.nanoTime();
             listener.preBuild(session, rm, dispatcher);
-            overheadTime += System.nanoTime()-startTime;
+            overhead("preBuild",startTime);
         }
 
         public void postBuild(MavenSession session, ReactorManager rm, EventDispatcher dispatcher) throws BuildFailureException, LifecycleExecutionException, IOException, InterruptedException {
             long startTime = System.nanoTime();
             fireLeaveModule();
             listener.postBuild(session, rm, dispatcher);
-            overheadTime += System.nanoTime()-startTime;
+            overhead("postBuild",startTime);
+            listener.timeline.close("session",session);
         }
 
         public void endModule() throws InterruptedException, IOException {
             long startTime = System.nanoTime();
             fireLeaveModule();
-            overheadTime += System.nanoTime()-startTime;
+            overhead("endModule",startTime);
         }
 
         public void preExecute(MavenProject project, MojoExecution exec, Mojo mojo, PlexusConfiguration mergedConfig, ExpressionEvaluator eval) throws IOException, InterruptedException {
@@ -320,32 +331,45 @@ public abstract class MavenBuilder extends AbstractMavenBuilder implements Deleg
             }
 
             listener.preExecute(project, new MojoInfo(exec, mojo, mergedConfig, eval));
-            overheadTime += System.nanoTime()-startTime;
+            overhead("preExecute",startTime);
+            MojoDescriptor md = exec.getMojoDescriptor();
+            listener.timeline.open("mojo",exec,md.getPluginDescriptor().getArtifactId()+':'+md.getGoal()+" ("+exec.getExecutionId()+')');
         }
 
         public void postExecute(MavenProject project, MojoExecution exec, Mojo mojo, PlexusConfiguration mergedConfig, ExpressionEvaluator eval, Exception exception) throws IOException, InterruptedException {
+            listener.timeline.close("mojo",exec);
             long startTime = System.nanoTime();
             listener.postExecute(project, new MojoInfo(exec, mojo, mergedConfig, eval),exception);
-            overheadTime += System.nanoTime()-startTime;
+            overhead("postExecute",startTime);
         }
 
         public void onReportGenerated(MavenReport report, MojoExecution mojoExecution, PlexusConfiguration mergedConfig, ExpressionEvaluator eval) throws IOException, InterruptedException {
             long startTime = System.nanoTime();
             listener.onReportGenerated(lastModule,new MavenReportInfo(mojoExecution,report,mergedConfig,eval));
-            overheadTime += System.nanoTime()-startTime;
+            overhead("reportGenerated",startTime);
         }
 
         private void fireEnterModule(MavenProject project) throws InterruptedException, IOException {
             lastModule = project;
+            listener.timeline.open("project",project,project.getGroupId()+':'+project.getArtifactId());
             listener.preModule(project);
         }
 
         private void fireLeaveModule() throws InterruptedException, IOException {
             if(lastModule!=null) {
                 listener.postModule(lastModule);
+                listener.timeline.close("project",lastModule);
                 lastModule = null;
             }
         }
+
+        /**
+         * Accounts for the time spent in Hudson since {@code startTime}.
+         */
+        private void overhead(String callback, long startTime) {
+            overheadTime += System.nanoTime()-startTime;
+            listener.timeline.end("hudson",callback,startTime);
+        }
     }
 
     /**
@@ -59,6 +59,16 @@ public class MavenComputerListener extends ComputerListener {
         logger.println("Copied classworlds.jar");
     }
 
+    /**
+     * Launches idle Maven processes for the kinds of builds that recently ran on this node,
+     * so that the first builds after the reconnection don't have to wait for them.
+     * This is done here and not in {@link #preOnline} since the launcher needs the computer to be online.
+     */
+    @Override
+    public void onOnline(Computer c, TaskListener listener) throws IOException, InterruptedException {
+        MavenBuild.mavenProcessCache.warmUp(c);
+    }
+
     /**
      * Copies a jar file from the master to slave.
      */
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.maven.MavenModuleSetBuild.SimpleTransferListener;
+import hudson.maven.ProcessCache.RedirectableOutputStream;
+import hudson.util.NullStream;
+import hudson.util.StreamTaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps {@link MavenEmbedder}s around after use, so that the next request with the same
+ * configuration doesn't have to build a new Plexus container and rediscover its components.
+ *
+ * <p>
+ * Embedders are keyed by everything that goes into their construction: Maven home, settings files
+ * (including their timestamps), private repository, profiles, properties and the parsing options.
+ * The log and the transfer events of a pooled embedder go to a stream that is pointed to the
+ * borrower's listener for the duration of the loan. Requests with a workspace reader, a custom
+ * class loader or a custom transfer listener carry state of their own and are never pooled.
+ *
+ * <p>
+ * A pooled embedder keeps its repository session, and with it what it cached about the repositories.
+ * A SNAPSHOT parent POM that is resolved from a repository rather than the workspace can therefore be
+ * served from that cache until the embedder is dropped, after {@link #IDLE_TIMEOUT} without use at the latest.
+ * Set {@link #MAX_IDLE} to 0 if builds depend on picking up newly deployed SNAPSHOT parents right away.
+ *
+ * <p>
+ * Embedders that leave the pool, and those that were never pooled, are stopped when they are given back,
+ * so that their Plexus containers don't stay around.
+ *
+ * <p>
+ * Each JVM has its own pool, so the master and every node keep their own embedders.
+ *
+ * @see MavenUtil#borrowEmbedder(MavenEmbedderRequest)
+ */
+final class MavenEmbedderPool {
+    private MavenEmbedderPool() {}
+
+    private static final class Entry {
+        final String key;
+        final MavenEmbedder embedder;
+        final RedirectableOutputStream out;
+        long idleSince;
+
+        Entry(String key, MavenEmbedder embedder, RedirectableOutputStream out) {
+            this.key = key;
+            this.embedder = embedder;
+            this.out = out;
+        }
+    }
+
+    /**
+     * Idle embedders, least recently used first.
+     */
+    private static final LinkedList<Entry> idle = new LinkedList<Entry>();
+
+    /**
+     * Pooled embedders that are currently lent out.
+     */
+    private static final Map<MavenEmbedder,Entry> lent = new IdentityHashMap<MavenEmbedder,Entry>();
+
+    static MavenEmbedder borrow(MavenEmbedderRequest request) throws MavenEmbedderException, IOException {
+        String key = getKey(request);
+        if (key==null || MAX_IDLE<=0)
+            return MavenUtil.createEmbedder(request);
+
+        MavenEmbedder reused = null;
+        List<MavenEmbedder> evicted = new ArrayList<MavenEmbedder>();
+        synchronized (MavenEmbedderPool.class) {
+            evictIdle(evicted);
+            for (Iterator<Entry> itr = idle.descendingIterator(); itr.hasNext();) {
+                Entry e = itr.next();
+                if (e.key.equals(key)) {
+                    itr.remove();
+                    e.out.set(request.getListener().getLogger());
+                    lent.put(e.embedder,e);
+                    reused = e.embedder;
+                    break;
+                }
+            }
+        }
+        for (MavenEmbedder m : evicted)
+            stop(m);
+        if (reused!=null) {
+            LOGGER.fine("Reusing a pooled maven embedder");
+            return reused;
+        }
+
+        // the embedder keeps the listeners it was created with, so give it ones we can redirect
+        RedirectableOutputStream out = new RedirectableOutputStream(request.getListener().getLogger());
+        StreamTaskListener listener = new StreamTaskListener(out);
+        request.setListener(listener);
+        if (request.getTransferListener()!=null)
+            request.setTransferListener(new SimpleTransferListener(listener));
+
+        Entry e = new Entry(key, MavenUtil.createEmbedder(request), out);
+        synchronized (MavenEmbedderPool.class) {
+            lent.put(e.embedder,e);
+        }
+        return e.embedder;
+    }
+
+    static void release(MavenEmbedder embedder) {
+        List<MavenEmbedder> evicted = new ArrayList<MavenEmbedder>();
+        synchronized (MavenEmbedderPool.class) {
+            Entry e = lent.remove(embedder);
+            if (e==null) {
+                // not pooled, so nobody is going to use it again
+                evicted.add(embedder);
+            } else {
+                e.out.set(new NullStream());
+                e.idleSince = System.currentTimeMillis();
+                idle.add(e);
+                while (idle.size()>MAX_IDLE)
+                    evicted.add(idle.removeFirst().embedder);
+                evictIdle(evicted);
+            }
+        }
+        // stopping a container can take a while, so don't hold up the other borrowers
+        for (MavenEmbedder m : evicted)
+            stop(m);
+    }
+
+    /**
+     * Removes the embedders that have been idle for too long, adding them to the given list.
+     */
+    private static void evictIdle(List<MavenEmbedder> evicted) {
+        long now = System.currentTimeMillis();
+        for (Iterator<Entry> itr = idle.iterator(); itr.hasNext();) {
+            Entry e = itr.next();
+            if (now-e.idleSince > IDLE_TIMEOUT) {
+                itr.remove();
+                evicted.add(e.embedder);
+            }
+        }
+    }
+
+    /**
+     * Disposes the Plexus container of an embedder that is no longer used,
+     * which releases its class realms and the components it has looked up.
+     */
+    private static void stop(MavenEmbedder embedder) {
+        try {
+            embedder.getPlexusContainer().dispose();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Failed to stop a maven embedder", e);
+        }
+    }
+
+    /**
+     * Computes the pool key, or returns null if the request can't use a pooled embedder.
+     */
+    private static String getKey(MavenEmbedderRequest r) {
+        if (r.getWorkspaceReader()!=null || r.getClassLoader()!=null)
+            return null;
+        if (r.getTransferListener()!=null && !(r.getTransferListener() instanceof SimpleTransferListener))
+            return null;
+
+        File userSettings = r.getAlternateSettings()!=null ? r.getAlternateSettings()
+                : new File(new File(MavenEmbedder.userHome, ".m2"), "settings.xml");
+        File globalSettings = new File(r.getMavenHome(), "conf/settings.xml");
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(r.getMavenHome()).append('\n')
+           .append(userSettings.getAbsolutePath()).append(' ').append(userSettings.lastModified()).append('\n')
+           .append(globalSettings.getAbsolutePath()).append(' ').append(globalSettings.lastModified()).append('\n')
+           .append(r.getPrivateRepository()).append('\n')
+           .append(r.getProfiles()).append('\n')
+           .append(r.getSystemProperties()==null ? null : new TreeMap<Object,Object>(r.getSystemProperties())).append('\n')
+           .append(r.getValidationLevel()).append(' ').append(r.isProcessPlugins()).append(' ').append(r.isResolveDependencies())
+           .append(' ').append(r.getTransferListener()!=null);
+        return buf.toString();
+    }
+
+    /**
+     * Maximum number of idle embedders kept per JVM. 0 disables pooling.
+     */
+    public static int MAX_IDLE = Integer.getInteger(MavenEmbedderPool.class.getName()+".maxIdle",4);
+
+    /**
+     * Idle embedders older than this (in milliseconds) are dropped.
+     */
+    public static long IDLE_TIMEOUT = Long.getLong(MavenEmbedderPool.class.getName()+".idleTimeout",TimeUnit.MINUTES.toMillis(10));
+
+    private static final Logger LOGGER = Logger.getLogger(MavenEmbedderPool.class.getName());
+}
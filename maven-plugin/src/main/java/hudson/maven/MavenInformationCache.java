@@ -0,0 +1,144 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.FilePath;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the {@link MavenInformation} of each Maven installation on each node,
+ * so that builds don't have to scan the jars of the installation to find out the Maven version.
+ *
+ * <p>
+ * An entry is validated against the names, sizes and timestamps of the jars in the lib directory
+ * of the installation, which only takes a directory listing on the node. Entries that were validated
+ * within the last {@link #CHECK_INTERVAL} are trusted without asking the node at all.
+ * Entries are keyed by the channel, so reconnecting a node starts over.
+ *
+ * @see MavenVersionCallable
+ */
+final class MavenInformationCache {
+    private MavenInformationCache() {}
+
+    private static final class Entry {
+        final String stamp;
+        final MavenInformation info;
+        volatile long checked;
+
+        Entry(String stamp, MavenInformation info, long checked) {
+            this.stamp = stamp;
+            this.info = info;
+            this.checked = checked;
+        }
+    }
+
+    private static final Map<VirtualChannel,Map<String,Entry>> entries = new WeakHashMap<VirtualChannel,Map<String,Entry>>();
+
+    /**
+     * Gets the {@link MavenInformation} of the Maven installation at the given location
+     * on the node where the file path is.
+     */
+    static MavenInformation get(FilePath path, String mavenHome) throws IOException, InterruptedException {
+        VirtualChannel channel = path.getChannel();
+        Entry e;
+        synchronized (entries) {
+            Map<String,Entry> m = entries.get(channel);
+            e = m==null ? null : m.get(mavenHome);
+        }
+
+        long now = System.currentTimeMillis();
+        if (e!=null && now-e.checked < CHECK_INTERVAL)
+            return e.info;
+
+        Probe.Result r = path.act(new Probe(mavenHome, e==null ? null : e.stamp));
+        if (r.info==null) {
+            // unchanged
+            e.checked = now;
+            return e.info;
+        }
+
+        synchronized (entries) {
+            Map<String,Entry> m = entries.get(channel);
+            if (m==null)
+                entries.put(channel, m=new HashMap<String,Entry>());
+            m.put(mavenHome, new Entry(r.stamp, r.info, now));
+        }
+        return r.info;
+    }
+
+    /**
+     * Computes the stamp of the installation on the node, and only looks for the version
+     * if the stamp doesn't match the expected one.
+     */
+    private static final class Probe implements Callable<Probe.Result,IOException> {
+        private final String mavenHome;
+        private final String expectedStamp;
+
+        Probe(String mavenHome, String expectedStamp) {
+            this.mavenHome = mavenHome;
+            this.expectedStamp = expectedStamp;
+        }
+
+        public Result call() throws IOException {
+            String stamp = getStamp(new File(mavenHome));
+            if (stamp.equals(expectedStamp))
+                return new Result(stamp, null);
+            return new Result(stamp, new MavenVersionCallable(mavenHome).call());
+        }
+
+        private static String getStamp(File home) {
+            File[] jars = new File(home, "lib").listFiles();
+            if (jars==null)
+                return home.getAbsolutePath()+" has no lib";
+            Arrays.sort(jars);
+
+            StringBuilder buf = new StringBuilder();
+            for (File jar : jars)
+                buf.append(jar.getName()).append(' ').append(jar.length()).append(' ').append(jar.lastModified()).append('\n');
+            return buf.toString();
+        }
+
+        static final class Result implements Serializable {
+            final String stamp;
+            /**
+             * Null if the stamp matched the expected one.
+             */
+            final MavenInformation info;
+
+            Result(String stamp, MavenInformation info) {
+                this.stamp = stamp;
+                this.info = info;
+            }
+
+            private static final long serialVersionUID = 1L;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * How long, in milliseconds, a validated entry is trusted without checking the node again.
+     */
+    public static long CHECK_INTERVAL = Long.getLong(MavenInformationCache.class.getName()+".checkInterval",TimeUnit.SECONDS.toMillis(60));
+}
@@ -47,9 +47,7 @@ import javax.servlet.ServletException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.logging.Level;
@@ -60,7 +58,7 @@ import java.util.logging.Logger;
  * 
  * @author Kohsuke Kawaguchi
  */
-public final class MavenModule extends AbstractMavenProject<MavenModule,MavenBuild> implements Saveable {
+public final class MavenModule extends AbstractMavenProject<MavenModule,MavenBuild> implements Saveable, ModuleDependencyIndex.Indexed {
     private DescribableList<MavenReporter,Descriptor<MavenReporter>> reporters =
         new DescribableList<MavenReporter,Descriptor<MavenReporter>>(this);
 
@@ -172,7 +170,45 @@ public final class MavenModule extends AbstractMavenProject<MavenModule,MavenBui
      */
     boolean hasSimilarPomInfo(PomInfo pomInfo){
         // This is possible because PomInfo overrides equals and hashcode
-        return this.pomInfo == pomInfo;
+        return pomInfo.equals(this.pomInfo);
+    }
+
+    /**
+     * Lists the properties of this module that {@link #reconfigure(PomInfo)} would change.
+     *
+     * @return
+     *      empty if this module is already up to date with the given POM,
+     *      in which case there's no need to reconfigure and save it.
+     */
+    /*package*/ List<String> getPomInfoChanges(PomInfo pom) {
+        List<String> r = new ArrayList<String>();
+        // the whole PomInfo is persisted, so any difference in it is worth a save
+        if (this.pomInfo==null || !this.pomInfo.isIdenticalTo(pom))
+            r.add("pomInfo");
+        if (!Util.fixNull(displayName).equals(Util.fixNull(pom.displayName)))
+            r.add("displayName");
+        if (!Util.fixNull(version).equals(Util.fixNull(pom.version)))
+            r.add("version");
+        if (!Util.fixNull(relativePath).equals(Util.fixNull(pom.relativePath)))
+            r.add("relativePath");
+        if (dependencies==null || !dependencies.equals(pom.dependencies))
+            r.add("dependencies");
+        if (children==null || !children.equals(pom.children))
+            r.add("children");
+        if (disabled)
+            r.add("disabled");
+
+        if (pom.mailNotifier != null) {
+            MavenReporter reporter = getReporters().get(MavenMailer.class);
+            if (reporter != null) {
+                MavenMailer mailer = (MavenMailer) reporter;
+                String recipients = pom.mailNotifier.getConfiguration().getProperty("recipients");
+                if (mailer.dontNotifyEveryUnstableBuild == pom.mailNotifier.isSendOnFailure()
+                || (recipients != null && !recipients.equals(mailer.recipients)))
+                    r.add("mailNotifier");
+            }
+        }
+        return r;
     }
 
 
@@ -194,6 +230,7 @@ public final class MavenModule extends AbstractMavenProject<MavenModule,MavenBui
         this.children = pom.children;
         this.nestLevel = pom.getNestLevel();
         disabled = false;
+        ModuleDependencyIndex.update(this);
 
         if (pom.mailNotifier != null) {
             MavenReporter reporter = getReporters().get(MavenMailer.class);
@@ -234,6 +271,7 @@ public final class MavenModule extends AbstractMavenProject<MavenModule,MavenBui
             }
             dependencies = deps;
         }
+        ModuleDependencyIndex.update(this);
     }
 
     /**
@@ -397,42 +435,33 @@ public final class MavenModule extends AbstractMavenProject<MavenModule,MavenBui
             return;
         }
 
-        Map<ModuleDependency,MavenModule> modules = new HashMap<ModuleDependency,MavenModule>();
-
-        // when we load old data that doesn't record version in dependency, we'd like
-        // to emulate the old behavior that it tries to identify the upstream by ignoring the version.
-        // do this by always putting groupId:artifactId:UNKNOWN to the modules list.
-
-        for (MavenModule m : Hudson.getInstance().getAllItems(MavenModule.class)) {
-            if(m.isDisabled())  continue;
-            modules.put(m.asDependency(),m);
-            modules.put(m.asDependency().withUnknownVersion(),m);
-        }
+        for (DependencyGraph.Dependency dep : getUpstreamDependencies())
+            graph.addDependency(dep);
 
-        // in case two modules with the same name is defined, modules in the same MavenModuleSet
-        // takes precedence.
+        // Tell DependencyGraph that this project has computed its dependency graph
+        graph.addToAlreadyComputedProjects(this);
+    }
 
-        for (MavenModule m : getParent().getModules()) {
-            if(m.isDisabled())  continue;
-            modules.put(m.asDependency(),m);
-            modules.put(m.asDependency().withUnknownVersion(),m);
-        }
+    /**
+     * Resolves the dependencies of this module into the edges of the dependency graph.
+     */
+    /*package*/ List<DependencyGraph.Dependency> getUpstreamDependencies() {
+        List<DependencyGraph.Dependency> r = new ArrayList<DependencyGraph.Dependency>();
 
         // if the build style is the aggregator build, define dependencies against project,
         // not module.
         AbstractProject dest = getParent().isAggregatorStyleBuild() ? getParent() : this;
 
         for (ModuleDependency d : dependencies) {
-            MavenModule src = modules.get(d);
+            MavenModule src = (MavenModule)ModuleDependencyIndex.find(d,getParent());
             if(src!=null) {
                 DependencyGraph.Dependency dep = new MavenModuleDependency(
                         src.getParent().isAggregatorStyleBuild() ? src.getParent() : src,dest);
                 if (!dep.pointsItself())
-                    graph.addDependency(dep);
+                    r.add(dep);
             }
         }
-        // Tell DependencyGraph that this project has computed its dependency graph
-        graph.addToAlreadyComputedProjects(this);
+        return r;
     }
 
     @Override
@@ -479,6 +508,7 @@ public final class MavenModule extends AbstractMavenProject<MavenModule,MavenBui
     protected void performDelete() throws IOException, InterruptedException {
         super.performDelete();
         getParent().onModuleDeleted(this);
+        ModuleDependencyIndex.remove(this);
     }
 
     /**
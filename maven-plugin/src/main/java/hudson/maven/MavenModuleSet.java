@@ -197,6 +197,13 @@ public final class MavenModuleSet extends AbstractMavenProject<MavenModuleSet,Ma
      */    
     private int mavenValidationLevel = -1;
 
+    /**
+     * If true, aggregator style builds return the Maven process to the {@link ProcessCache}
+     * when they complete normally, instead of discarding it. By default <code>false</code>,
+     * since Maven and its plugins may leave behind state that affects subsequent builds.
+     */
+    private boolean reuseMavenProcess = false;
+
     /**
      * Reporters configured at {@link MavenModuleSet} level. Applies to all {@link MavenModule} builds.
      */
@@ -279,6 +286,9 @@ public final class MavenModuleSet extends AbstractMavenProject<MavenModuleSet,Ma
                 if(added.add(a.getClass()))
                     collection.add(((MavenAggregatedReport)a).getProjectAction(this));
 
+        if(build.getAction(ReporterCostAction.class)!=null && added.add(ReporterCostTrendAction.class))
+            collection.add(new ReporterCostTrendAction(this));
+
         List<MavenReporter> list = build.projectActionReporters;
         if(list==null)   return;
 
@@ -299,6 +309,20 @@ public final class MavenModuleSet extends AbstractMavenProject<MavenModuleSet,Ma
         modules.remove(module.getModuleName());
     }
 
+    @Override
+    protected void performDelete() throws IOException, InterruptedException {
+        super.performDelete();
+        ModuleDependencyIndex.remove(this);
+    }
+
+    @Override
+    public void renameTo(String newName) throws IOException {
+        super.renameTo(newName);
+        // the full names of the modules include ours
+        for (MavenModule m : modules.values())
+            ModuleDependencyIndex.update(m);
+    }
+
     /**
      * Returns true if there's any disabled module.
      */
@@ -394,6 +418,14 @@ public final class MavenModuleSet extends AbstractMavenProject<MavenModuleSet,Ma
     public int getMavenValidationLevel() {
         return mavenValidationLevel;
     }    
+
+    public boolean isReuseMavenProcess() {
+        return reuseMavenProcess;
+    }
+
+    public void setReuseMavenProcess( boolean reuseMavenProcess ) {
+        this.reuseMavenProcess = reuseMavenProcess;
+    }
     
     /**
      * List of active {@link MavenReporter}s that should be applied to all module builds.
@@ -586,6 +618,28 @@ public final class MavenModuleSet extends AbstractMavenProject<MavenModuleSet,Ma
         graph.addToAlreadyComputedProjects(this);
     }
 
+    /**
+     * Describes everything the modules of this project contribute to the dependency graph:
+     * the coordinates under which other projects find them, and the edges from their upstream projects.
+     *
+     * <p>
+     * If this doesn't change when the modules get reconfigured, the dependency graph
+     * of the whole Hudson doesn't need to be rebuilt.
+     */
+    /*package*/ Set<String> getDependencyFootprint() {
+        Set<String> r = new HashSet<String>();
+        for (MavenModule m : getModules()) {
+            if(m.isDisabled())  continue;
+            ModuleDependency d = m.asDependency();
+            r.add(d.groupId+':'+d.artifactId+':'+d.version+" from "+(aggregatorStyleBuild ? getFullName() : m.getFullName()));
+            if(ignoreUpstremChanges)    continue;
+
+            for (DependencyGraph.Dependency dep : m.getUpstreamDependencies())
+                r.add(dep.getUpstreamProject().getFullName()+" -> "+dep.getDownstreamProject().getFullName());
+        }
+        return r;
+    }
+
     public MavenModule getRootModule() {
         if(rootModule==null)    return null;
         return modules.get(rootModule);
@@ -814,6 +868,7 @@ public final class MavenModuleSet extends AbstractMavenProject<MavenModuleSet,Ma
         resolveDependencies = req.hasParameter( "maven.resolveDependencies" );
         processPlugins = req.hasParameter( "maven.processPlugins" );
         mavenValidationLevel = NumberUtils.toInt( req.getParameter( "maven.validationLevel" ), -1 );
+        reuseMavenProcess = req.hasParameter( "maven.reuseMavenProcess" );
 
         reporters.rebuild(req,json,MavenReporters.getConfigurableList());
         publishers.rebuild(req,json,BuildStepDescriptor.filter(Publisher.all(),this.getClass()));
@@ -31,6 +31,7 @@ import hudson.model.Computer;
 import hudson.model.Environment;
 import hudson.model.Fingerprint;
 import hudson.model.Hudson;
+import hudson.model.Node;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParametersAction;
 import hudson.model.ParametersDefinitionProperty;
@@ -45,6 +46,8 @@ import hudson.tasks.BuildWrapper;
 import hudson.tasks.MailSender;
 import hudson.tasks.Maven.MavenInstallation;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.IOException2;
 import hudson.util.IOUtils;
 import hudson.util.MaskingClassLoader;
 import hudson.util.StreamTaskListener;
@@ -55,8 +58,10 @@ import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -64,6 +69,15 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.io.FilenameUtils;
@@ -493,7 +507,7 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                 
                 mvn = mvn.forEnvironment(envVars).forNode(Computer.currentComputer().getNode(), listener);
 
-                MavenInformation mavenInformation = getModuleRoot().act( new MavenVersionCallable( mvn.getHome() ));
+                MavenInformation mavenInformation = MavenInformationCache.get( getModuleRoot(), mvn.getHome() );
                 
                 String mavenVersion = mavenInformation.getVersion();
                 
@@ -529,35 +543,6 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                         if(!preBuild(listener, project.getPublishers()))
                             return Result.FAILURE;
 
-                        parsePoms(listener, logger, envVars, mvn, mavenVersion); // #5428 : do pre-build *before* parsing pom
-                        SplittableBuildListener slistener = new SplittableBuildListener(listener);
-                        proxies = new HashMap<ModuleName, ProxyImpl2>();
-                        List<String> changedModules = new ArrayList<String>();
-
-                        for (MavenModule m : project.sortedActiveModules) {
-                            MavenBuild mb = m.newBuild();
-                            // HUDSON-8418
-                            mb.setBuiltOnStr( getBuiltOnStr() );
-                            // Check if incrementalBuild is selected and that there are changes -
-                            // we act as if incrementalBuild is not set if there are no changes.
-                            if (!MavenModuleSetBuild.this.getChangeSet().isEmptySet()
-                                && project.isIncrementalBuild()) {
-                                //If there are changes for this module, add it.
-                                // Also add it if we've never seen this module before,
-                                // or if the previous build of this module failed or was unstable.
-                                if ((mb.getPreviousBuiltBuild() == null) ||
-                                    (!getChangeSetFor(m).isEmpty()) 
-                                    || (mb.getPreviousBuiltBuild().getResult().isWorseThan(Result.SUCCESS))) {
-                                    changedModules.add(m.getModuleName().toString());
-                                }
-                            }
-
-                            mb.setWorkspace(getModuleRoot().child(m.getRelativePath()));
-                            proxies.put(m.getModuleName(), mb.new ProxyImpl2(MavenModuleSetBuild.this,slistener));
-                        }
-
-                        // run the complete build here
-
                         // figure out the root POM location.
                         // choice of module root ('ws' in this method) is somewhat arbitrary
                         // when multiple CVS/SVN modules are checked out, so also check
@@ -568,111 +553,151 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                         if(!pom.exists() && parentLoc.exists())
                             pom = parentLoc;
 
-                        
+                        boolean maven3orLater = MavenUtil.maven3orLater( mavenVersion );
+                        boolean reuseProcess = project.isReuseMavenProcess();
+
+                        // the Maven process doesn't depend on the POMs, so get it launched while they are parsed
+                        SplittableBuildListener slistener = new SplittableBuildListener(listener);
+                        Future<ProcessCache.MavenProcess> processFuture = acquireProcess(slistener, envVars, pom.getParent(), maven3orLater);
                         ProcessCache.MavenProcess process = null;
-                        
-                        boolean maven3orLater = MavenUtil.maven3orLater( mavenVersion ); 
-                       
-                        if ( maven3orLater )
-                        {
-                            LOGGER.info( "using maven 3 " + mavenVersion );
-                            process =
-                                MavenBuild.mavenProcessCache.get( launcher.getChannel(), slistener,
-                                                                  new Maven3ProcessFactory( project, launcher, envVars,
-                                                                                            pom.getParent() ) );
-                        }
-                        else
-                        {
-                            process =
-                                MavenBuild.mavenProcessCache.get( launcher.getChannel(), slistener,
-                                                                  new MavenProcessFactory( project, launcher, envVars,
-                                                                                           pom.getParent() ) );
-                        }
-                        ArgumentListBuilder margs = new ArgumentListBuilder().add("-B").add("-f", pom.getRemote());
-                        if(project.usesPrivateRepository())
-                            margs.add("-Dmaven.repo.local="+getWorkspace().child(".repository"));
-                        // If incrementalBuild is set, and we're on Maven 2.1 or later, *and* there's at least one module
-                        // listed in changedModules, do the Maven incremental build commands - if there are no changed modules,
-                        // We're building everything anyway.
-                        boolean maven2_1orLater = new ComparableVersion (mavenVersion).compareTo( new ComparableVersion ("2.1") ) >= 0;
-                        if (project.isIncrementalBuild() && maven2_1orLater && !changedModules.isEmpty()) {
-                            margs.add("-amd");
-                            margs.add("-pl", Util.join(changedModules, ","));
+                        boolean parsed = false;
+                        try {
+                            // #5428 : do pre-build *before* parsing pom
+                            parsePoms(listener, logger, envVars, mvn, mavenVersion);
+                            process = joinProcess(processFuture);
+                            parsed = true;
+                        } finally {
+                            if (process==null)
+                                abandonProcess(processFuture, reuseProcess);
+                            else if (!parsed)
+                                process.discard();
                         }
 
-                        if (project.getAlternateSettings() != null) {
-                            if (IOUtils.isAbsolute(project.getAlternateSettings())) {
-                                margs.add("-s").add(project.getAlternateSettings());
-                            } else {
-                                FilePath mrSettings = getModuleRoot().child(project.getAlternateSettings());
-                                FilePath wsSettings = getWorkspace().child(project.getAlternateSettings());
-                                if (!wsSettings.exists() && mrSettings.exists())
-                                    wsSettings = mrSettings;
+                        // from here on, every way out has to hand the process back
+                        boolean normalExit = false;
+                        try {
+                            proxies = new HashMap<ModuleName, ProxyImpl2>();
+                            List<String> changedModules = new ArrayList<String>();
+
+                            for (MavenModule m : project.sortedActiveModules) {
+                                MavenBuild mb = m.newBuild();
+                                // HUDSON-8418
+                                mb.setBuiltOnStr( getBuiltOnStr() );
+                                // Check if incrementalBuild is selected and that there are changes -
+                                // we act as if incrementalBuild is not set if there are no changes.
+                                if (!MavenModuleSetBuild.this.getChangeSet().isEmptySet()
+                                    && project.isIncrementalBuild()) {
+                                    //If there are changes for this module, add it.
+                                    // Also add it if we've never seen this module before,
+                                    // or if the previous build of this module failed or was unstable.
+                                    if ((mb.getPreviousBuiltBuild() == null) ||
+                                        (!getChangeSetFor(m).isEmpty()) 
+                                        || (mb.getPreviousBuiltBuild().getResult().isWorseThan(Result.SUCCESS))) {
+                                        changedModules.add(m.getModuleName().toString());
+                                    }
+                                }
+
+                                mb.setWorkspace(getModuleRoot().child(m.getRelativePath()));
+                                proxies.put(m.getModuleName(), mb.new ProxyImpl2(MavenModuleSetBuild.this,slistener));
+                            }
+
+                            // run the complete build here
+
+                            ArgumentListBuilder margs = new ArgumentListBuilder().add("-B").add("-f", pom.getRemote());
+                            if(project.usesPrivateRepository())
+                                margs.add("-Dmaven.repo.local="+getWorkspace().child(".repository"));
+                            // If incrementalBuild is set, and we're on Maven 2.1 or later, *and* there's at least one module
+                            // listed in changedModules, do the Maven incremental build commands - if there are no changed modules,
+                            // We're building everything anyway.
+                            boolean maven2_1orLater = new ComparableVersion (mavenVersion).compareTo( new ComparableVersion ("2.1") ) >= 0;
+                            if (project.isIncrementalBuild() && maven2_1orLater && !changedModules.isEmpty()) {
+                                margs.add("-amd");
+                                margs.add("-pl", Util.join(changedModules, ","));
+                            }
+
+                            if (project.getAlternateSettings() != null) {
+                                if (IOUtils.isAbsolute(project.getAlternateSettings())) {
+                                    margs.add("-s").add(project.getAlternateSettings());
+                                } else {
+                                    FilePath mrSettings = getModuleRoot().child(project.getAlternateSettings());
+                                    FilePath wsSettings = getWorkspace().child(project.getAlternateSettings());
+                                    if (!wsSettings.exists() && mrSettings.exists())
+                                        wsSettings = mrSettings;
                                 
-                                margs.add("-s").add(wsSettings.getRemote());
+                                    margs.add("-s").add(wsSettings.getRemote());
+                                }
                             }
-                        }
                         
-                        final List<MavenArgumentInterceptorAction> argInterceptors = this.getBuild().getActions(MavenArgumentInterceptorAction.class);
+                            final List<MavenArgumentInterceptorAction> argInterceptors = this.getBuild().getActions(MavenArgumentInterceptorAction.class);
                         
-	                // find the correct maven goals and options, there might by an action overruling the defaults
-                        String goals = project.getGoals(); // default
-                        for (MavenArgumentInterceptorAction mavenArgInterceptor : argInterceptors) {
-                            final String goalsAndOptions = mavenArgInterceptor.getGoalsAndOptions((MavenModuleSetBuild) this.getBuild());
-                            if (StringUtils.isNotBlank(goalsAndOptions)) {
-                                goals = goalsAndOptions;
-                                // only one interceptor is allowed to overwrite the whole "goals and options" string
-                                break;
+    	                // find the correct maven goals and options, there might by an action overruling the defaults
+                            String goals = project.getGoals(); // default
+                            for (MavenArgumentInterceptorAction mavenArgInterceptor : argInterceptors) {
+                                final String goalsAndOptions = mavenArgInterceptor.getGoalsAndOptions((MavenModuleSetBuild) this.getBuild());
+                                if (StringUtils.isNotBlank(goalsAndOptions)) {
+                                    goals = goalsAndOptions;
+                                    // only one interceptor is allowed to overwrite the whole "goals and options" string
+                                    break;
+                                }
                             }
-                        }
-                        margs.addTokenized(envVars.expand(goals));
-
-                        // enable the interceptors to change the whole command argument list
-                        // all available interceptors are allowed to modify the argument list
-                        for (MavenArgumentInterceptorAction mavenArgInterceptor : argInterceptors) {
-                            final ArgumentListBuilder newMargs = mavenArgInterceptor.intercept(margs, (MavenModuleSetBuild) this.getBuild());
-                            if (newMargs != null) {
-                                margs = newMargs;
+                            margs.addTokenized(envVars.expand(goals));
+
+                            // enable the interceptors to change the whole command argument list
+                            // all available interceptors are allowed to modify the argument list
+                            for (MavenArgumentInterceptorAction mavenArgInterceptor : argInterceptors) {
+                                final ArgumentListBuilder newMargs = mavenArgInterceptor.intercept(margs, (MavenModuleSetBuild) this.getBuild());
+                                if (newMargs != null) {
+                                    margs = newMargs;
+                                }
                             }
-                        }
                         
-                        if (maven3orLater)
-                        {   
+                            AbstractMavenBuilder builder;
+                            if (maven3orLater)
+                            {   
                             
-                            Map<ModuleName,List<MavenReporter>> reporters = new HashMap<ModuleName, List<MavenReporter>>(project.sortedActiveModules.size());
-                            for (MavenModule mavenModule : project.sortedActiveModules)
-                            {
-                                reporters.put( mavenModule.getModuleName(), mavenModule.createReporters() );
-                            }
-                            Maven3Builder maven3Builder = 
-                                new Maven3Builder( slistener, proxies, reporters, margs.toList(), envVars, mavenBuildInformation );
-                            MavenProbeAction mpa=null;
-                            try {
-                                mpa = new MavenProbeAction(project,process.channel);
-                                addAction(mpa);
-                                r = process.call(maven3Builder);
-                                return r;
-                            } finally {
-                                maven3Builder.end(launcher);
-                                getActions().remove(mpa);
-                                process.discard();
-                            }                            
+                                Map<ModuleName,List<MavenReporter>> reporters = new HashMap<ModuleName, List<MavenReporter>>(project.sortedActiveModules.size());
+                                for (MavenModule mavenModule : project.sortedActiveModules)
+                                {
+                                    reporters.put( mavenModule.getModuleName(), mavenModule.createReporters() );
+                                }
+                                builder = 
+                                    new Maven3Builder( slistener, proxies, reporters, margs.toList(), envVars, mavenBuildInformation );
                             
-                        } else {
+                            } else {
                          
-                            Builder builder = 
-                                new Builder(slistener, proxies, project.sortedActiveModules, margs.toList(), envVars, mavenBuildInformation);
+                                builder = 
+                                    new Builder(slistener, proxies, project.sortedActiveModules, margs.toList(), envVars, mavenBuildInformation);
+                            }
+
                             MavenProbeAction mpa=null;
                             try {
-                                mpa = new MavenProbeAction(project,process.channel);
-                                addAction(mpa);
-                                r = process.call(builder);
+                                while (true) {
+                                    mpa = new MavenProbeAction(project,process.channel);
+                                    addAction(mpa);
+                                    try {
+                                        r = process.call(builder);
+                                        break;
+                                    } catch (ProcessCache.StaleProcessException e) {
+                                        // it died while it was cached, and the build never got to it
+                                        getActions().remove(mpa);
+                                        slistener.getLogger().println(Messages.ProcessCache_Stale());
+                                        ProcessCache.MavenProcess stale = process;
+                                        process = joinProcess(acquireProcess(slistener, envVars, pom.getParent(), maven3orLater));
+                                        stale.discard();
+                                    }
+                                }
+                                normalExit = true;
                                 return r;
                             } finally {
-                                builder.end(launcher);
+                                if (builder instanceof Maven3Builder)
+                                    ((Maven3Builder)builder).end(launcher);
+                                else
+                                    ((Builder)builder).end(launcher);
                                 getActions().remove(mpa);
-                                process.discard();
                             }
+                        } finally {
+                            if(normalExit && reuseProcess)  process.recycle();
+                            else                            process.discard();
                         }
 
                     } catch (InterruptedException e) {
@@ -717,6 +742,65 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
             }
         }
 
+        /**
+         * Starts getting a Maven process from {@link ProcessCache} in the background,
+         * so that launching a new JVM overlaps with whatever the build does in the mean time.
+         */
+        private Future<ProcessCache.MavenProcess> acquireProcess(final BuildListener listener, EnvVars envVars, FilePath workDir, boolean maven3orLater) {
+            // the factory can't find the node from the executor thread once it runs in the background
+            Node node = Computer.currentComputer().getNode();
+            final ProcessCache.Factory factory;
+            if (maven3orLater) {
+                LOGGER.info( "using maven 3 " + getMavenVersionUsed() );
+                factory = new Maven3ProcessFactory( project, launcher, envVars, workDir, node );
+            } else {
+                factory = new MavenProcessFactory( project, launcher, envVars, workDir, node );
+            }
+            return Computer.threadPoolForRemoting.submit(new Callable<ProcessCache.MavenProcess>() {
+                public ProcessCache.MavenProcess call() throws Exception {
+                    return MavenBuild.mavenProcessCache.get( launcher.getChannel(), listener, factory );
+                }
+            });
+        }
+
+        /**
+         * Waits for the process requested by {@link #acquireProcess}.
+         */
+        private ProcessCache.MavenProcess joinProcess(Future<ProcessCache.MavenProcess> process) throws IOException, InterruptedException {
+            try {
+                return process.get();
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof IOException)
+                    throw (IOException)t;
+                if (t instanceof InterruptedException)
+                    throw (InterruptedException)t;
+                if (t instanceof RuntimeException)
+                    throw (RuntimeException)t;
+                if (t instanceof Error)
+                    throw (Error)t;
+                throw new IOException2(t);
+            }
+        }
+
+        /**
+         * Hands back a process requested by {@link #acquireProcess} that the build ended up not using,
+         * without making the build wait for it to finish launching.
+         */
+        private void abandonProcess(final Future<ProcessCache.MavenProcess> process, final boolean reuseProcess) {
+            Computer.threadPoolForRemoting.submit(new Runnable() {
+                public void run() {
+                    try {
+                        ProcessCache.MavenProcess p = process.get();
+                        if(reuseProcess)    p.recycle();
+                        else                p.discard();
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, "Failed to release an unused maven process", e);
+                    }
+                }
+            });
+        }
+
         private void parsePoms(BuildListener listener, PrintStream logger, EnvVars envVars, MavenInstallation mvn, String mavenVersion) throws IOException, InterruptedException {
             logger.println("Parsing POMs");
 
@@ -734,6 +818,8 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
             }
 
             boolean needsDependencyGraphComputation = false;
+            int added = 0, reconfigured = 0;
+            Set<String> oldFootprint = project.getDependencyFootprint();
 
             // update the module list
             Map<ModuleName,MavenModule> modules = project.modules;
@@ -748,13 +834,19 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                 for (PomInfo pom : poms) {
                     MavenModule mm = old.get(pom.name);
                     if(mm!=null) {// found an existing matching module
-                        if(debug)
-                            logger.println("Reconfiguring "+mm);
-                        if (!mm.hasSimilarPomInfo(pom)){
-                            // The module POMInfo changed so need computation
-                             needsDependencyGraphComputation = true;
+                        // don't rewrite the config.xml of modules that didn't change
+                        List<String> changes = mm.getPomInfoChanges(pom);
+                        if (!changes.isEmpty()) {
+                            if(debug)
+                                logger.println("Reconfiguring "+mm+" "+changes);
+                            if (!mm.hasSimilarPomInfo(pom)){
+                                // The module POMInfo changed so need computation
+                                 needsDependencyGraphComputation = true;
+                            }
+                            mm.reconfigure(pom);
+                            mm.save();
+                            reconfigured++;
                         }
-                        mm.reconfigure(pom);
                         modules.put(pom.name,mm);
                     } else {// this looks like a new module
                         logger.println(Messages.MavenModuleSetBuild_DiscoveredModule(pom.name,pom.displayName));
@@ -762,9 +854,10 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                         modules.put(mm.getModuleName(),mm);
                         // Some Modules are removed so need computation of Dependency Graph
                         needsDependencyGraphComputation = true;
+                        mm.save();
+                        added++;
                     }
                     sortedModules.add(mm);
-                    mm.save();
                 }
                 // at this point the list contains all the live modules
                 project.sortedActiveModules = sortedModules;
@@ -781,11 +874,19 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                     needsDependencyGraphComputation = true;
                 }
                 modules.putAll(old);
+
+                logger.println(Messages.MavenModuleSetBuild_ModulesUpdated(poms.size(), added, reconfigured, poms.size()-added-reconfigured, old.size()));
             }
 
-            // we might have added new modules
+            // we might have added new modules.
+            // rebuilding the graph visits every project, so only do it if the edges of this project changed
             if (needsDependencyGraphComputation){
-                Hudson.getInstance().rebuildDependencyGraph();
+                if (project.getDependencyFootprint().equals(oldFootprint)) {
+                    if(debug)
+                        logger.println("Dependency graph is unaffected by the module changes");
+                } else {
+                    Hudson.getInstance().rebuildDependencyGraph();
+                }
             }
 
             // module builds must start with this build's number
@@ -861,7 +962,7 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                 reporters.put(m.getModuleName(),m.createReporters());
         }
 
-        private class FilterImpl extends MavenBuildProxy2.Filter<MavenBuildProxy2> implements Serializable {
+        private class FilterImpl extends MavenBuildProxy2.CountingFilter<MavenBuildProxy2> implements Serializable {
             
             private MavenBuildInformation mavenBuildInformation;
             
@@ -872,7 +973,7 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
 
             @Override
             public void executeAsync(final BuildCallable<?,?> program) throws IOException {
-                futures.add(Channel.current().callAsync(new AsyncInvoker(core,program)));
+                asyncCalls.submit(new AsyncInvoker(core,program));
             }
 
             public MavenBuildInformation getMavenBuildInformation() {
@@ -888,16 +989,27 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
          * Invoked after the maven has finished running, and in the master, not in the maven process.
          */
         void end(Launcher launcher) throws IOException, InterruptedException {
+            ReporterCosts costs = new ReporterCosts();
+            MavenBuild owner = null;
             for (Map.Entry<ModuleName,ProxyImpl2> e : sourceProxies.entrySet()) {
                 ProxyImpl2 p = e.getValue();
+                owner = p.owner();
                 for (MavenReporter r : reporters.get(e.getKey())) {
                     // we'd love to do this when the module build ends, but doing so requires
                     // we know how many task segments are in the current build.
-                    r.end(p.owner(),launcher,listener);
+                    long t = costs.begin(r,"end");
+                    try {
+                        r.end(p.owner(),launcher,listener);
+                    } finally {
+                        costs.end(t);
+                    }
                     p.appendLastLog();
                 }
                 p.close();
             }
+            // Builder is static, so reach the aggregator build through a module build
+            if (owner!=null)
+                costs.record(owner.getParentBuild()!=null ? owner.getParentBuild() : owner);
         }
 
         @Override
@@ -938,14 +1050,32 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
             // TODO
         }
 
+        @Override
+        void recordStatistics() {
+            if (!proxies.isEmpty()) {
+                MavenBuildProxy proxy = proxies.values().iterator().next();
+                asyncCalls.record(proxy,true);
+                timeline.record(proxy,true,listener);
+                reporterCosts.record(proxy,true,listener);
+            }
+        }
+
         void preModule(MavenProject project) throws InterruptedException, IOException, hudson.maven.agent.AbortException {
             ModuleName name = new ModuleName(project);
             MavenBuildProxy2 proxy = proxies.get(name);
             listener.getLogger().flush();   // make sure the data until here are all written
             proxy.start();
-            for (MavenReporter r : reporters.get(name))
-                if(!r.preBuild(proxy,project,listener))
+            for (MavenReporter r : reporters.get(name)) {
+                long t = reporterCosts.begin(r,"preBuild");
+                boolean ok;
+                try {
+                    ok = r.preBuild(proxy,project,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new hudson.maven.agent.AbortException(r+" failed");
+            }
         }
 
         void postModule(MavenProject project) throws InterruptedException, IOException, hudson.maven.agent.AbortException {
@@ -955,9 +1085,17 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
             if(rs==null) { // probe for issue #906
                 throw new AssertionError("reporters.get("+name+")==null. reporters="+reporters+" proxies="+proxies);
             }
-            for (MavenReporter r : rs)
-                if(!r.postBuild(proxy,project,listener))
+            for (MavenReporter r : rs) {
+                long t = reporterCosts.begin(r,"postBuild");
+                boolean ok;
+                try {
+                    ok = r.postBuild(proxy,project,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new hudson.maven.agent.AbortException(r+" failed");
+            }
             proxy.setExecutedMojos(executedMojos.get(name));
             listener.getLogger().flush();   // make sure the data until here are all written
             proxy.end();
@@ -967,9 +1105,17 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
         void preExecute(MavenProject project, MojoInfo mojoInfo) throws IOException, InterruptedException, hudson.maven.agent.AbortException {
             ModuleName name = new ModuleName(project);
             MavenBuildProxy proxy = proxies.get(name);
-            for (MavenReporter r : reporters.get(name))
-                if(!r.preExecute(proxy,project,mojoInfo,listener))
+            for (MavenReporter r : reporters.get(name)) {
+                long t = reporterCosts.begin(r,"preExecute");
+                boolean ok;
+                try {
+                    ok = r.preExecute(proxy,project,mojoInfo,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new hudson.maven.agent.AbortException(r+" failed");
+            }
 
             mojoStartTime = System.currentTimeMillis();
         }
@@ -983,9 +1129,17 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
             mojoList.add(new ExecutedMojo(mojoInfo,System.currentTimeMillis()-mojoStartTime));
 
             MavenBuildProxy2 proxy = proxies.get(name);
-            for (MavenReporter r : reporters.get(name))
-                if(!r.postExecute(proxy,project,mojoInfo,listener,exception))
+            for (MavenReporter r : reporters.get(name)) {
+                long t = reporterCosts.begin(r,"postExecute");
+                boolean ok;
+                try {
+                    ok = r.postExecute(proxy,project,mojoInfo,listener,exception);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new hudson.maven.agent.AbortException(r+" failed");
+            }
             if(exception!=null)
                 proxy.setResult(Result.FAILURE);
         }
@@ -993,9 +1147,17 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
         void onReportGenerated(MavenProject project, MavenReportInfo report) throws IOException, InterruptedException, hudson.maven.agent.AbortException {
             ModuleName name = new ModuleName(project);
             MavenBuildProxy proxy = proxies.get(name);
-            for (MavenReporter r : reporters.get(name))
-                if(!r.reportGenerated(proxy,project,report,listener))
+            for (MavenReporter r : reporters.get(name)) {
+                long t = reporterCosts.begin(r,"reportGenerated");
+                boolean ok;
+                try {
+                    ok = r.reportGenerated(proxy,project,report,listener);
+                } finally {
+                    reporterCosts.end(t);
+                }
+                if(!ok)
                     throw new hudson.maven.agent.AbortException(r+" failed");
+            }
         }
         
         
@@ -1037,6 +1199,14 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
          * takes an effect even when {@link PomParser} runs in a slave.
          */
         private final boolean verbose = debug;
+        /**
+         * Same for {@link PomInfoCache#ENABLED}.
+         */
+        private final boolean useCache = PomInfoCache.ENABLED;
+        /**
+         * Same for {@link MavenModuleSetBuild#POM_PARSER_THREADS}.
+         */
+        private final int parserThreads = POM_PARSER_THREADS;
         private final MavenInstallation mavenHome;
         private final String profiles;
         private final Properties properties;
@@ -1153,6 +1323,18 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                 throw new AbortException(Messages.MavenModuleSetBuild_NoSuchAlternateSettings(settingsLoc.getAbsolutePath()));
             }
 
+            // resolved dependencies depend on the state of the repositories, not just on the POMs
+            String cacheKey = null;
+            if (useCache && !resolveDependencies) {
+                cacheKey = getCacheKey(pom, settingsLoc);
+                List<PomInfo> cached = PomInfoCache.get(cacheKey);
+                if (cached!=null) {
+                    logger.println(Messages.MavenModuleSetBuild_PomsUnchanged());
+                    return cached;
+                }
+            }
+
+            MavenEmbedder embedder = null;
             try {
                 MavenEmbedderRequest mavenEmbedderRequest = new MavenEmbedderRequest( listener, mavenHome.getHomeDir(),
                                                                                       profiles, properties,
@@ -1180,7 +1362,7 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                 
                 //mavenEmbedderRequest.setClassLoader( MavenEmbedderUtils.buildClassRealm( mavenHome.getHomeDir(), null, null ) );
                 
-                MavenEmbedder embedder = MavenUtil.createEmbedder( mavenEmbedderRequest );
+                embedder = MavenUtil.borrowEmbedder( mavenEmbedderRequest );
                 
                 MavenProject rootProject = null;
                 
@@ -1197,7 +1379,11 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                     mps.add( mavenProject );
                     reactorReader.addProject( mavenProject );
                     if (!this.nonRecursive) {
-                        readChilds( mavenProject, embedder, mps, reactorReader );
+                        int threads = parserThreads>0 ? parserThreads : Math.min(4, Runtime.getRuntime().availableProcessors());
+                        if (threads>1)
+                            readChildsInParallel( mavenProject, embedder, mavenEmbedderRequest, mps, reactorReader, threads );
+                        else
+                            readChilds( mavenProject, embedder, mps, reactorReader );
                     }
                 }
                 Map<String,MavenProject> canonicalPaths = new HashMap<String, MavenProject>( mps.size() );
@@ -1232,14 +1418,56 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                 for (PomInfo pi : infos)
                     pi.cutCycle();
 
-                return new ArrayList<PomInfo>(infos);
+                List<PomInfo> result = new ArrayList<PomInfo>(infos);
+                if (cacheKey!=null)
+                    PomInfoCache.put(cacheKey, getParsedFiles(mps, settingsLoc), result);
+                return result;
             } catch (MavenEmbedderException e) {
                 throw new MavenExecutionException(e);
             } catch (ProjectBuildingException e) {
                 throw new MavenExecutionException(e);
+            } finally {
+                if (embedder!=null)
+                    MavenUtil.releaseEmbedder(embedder);
             }
         }
 
+        /**
+         * Everything but the files that the result of the parse depends on.
+         */
+        private String getCacheKey(File pom, File settingsLoc) throws IOException {
+            StringBuilder buf = new StringBuilder();
+            buf.append(pom.getCanonicalPath()).append('\n')
+               .append(mavenHome.getHomeDir()).append('\n')
+               .append(mavenVersion).append('\n')
+               .append(profiles).append('\n')
+               .append(new TreeMap<Object,Object>(properties)).append('\n')
+               .append(privateRepository).append('\n')
+               .append(settingsLoc).append('\n')
+               .append(nonRecursive).append(' ').append(processPlugins).append(' ').append(mavenValidationLevel).append('\n')
+               .append(workspaceProper).append('\n')
+               .append(moduleRootPath).append('\n')
+               .append(rootPOMRelPrefix);
+            return buf.toString();
+        }
+
+        /**
+         * Lists the POMs that were read, including the parents read from the file system,
+         * and the settings files.
+         */
+        private Set<File> getParsedFiles(List<MavenProject> mps, File settingsLoc) {
+            Set<File> files = new HashSet<File>();
+            for (MavenProject mp : mps) {
+                for (MavenProject p=mp; p!=null; p=p.getParent()) {
+                    if (p.getFile()!=null)
+                        files.add(p.getFile());
+                }
+            }
+            files.add(settingsLoc!=null ? settingsLoc : new File(new File(MavenEmbedder.userHome, ".m2"), "settings.xml"));
+            files.add(new File(mavenHome.getHomeDir(), "conf/settings.xml"));
+            return files;
+        }
+
         /**
          * @see PomInfo#relativePath to understand relPath calculation
          */
@@ -1299,6 +1527,147 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
             }
         }
         
+        /**
+         * Does the same as {@link #readChilds(MavenProject, MavenEmbedder, List, ReactorReader)},
+         * but a level of the module tree at a time, reading all the modules of a level in parallel.
+         *
+         * <p>
+         * Each worker borrows an embedder for the whole parse, and the {@link ReactorReader} is only
+         * updated between levels, once the workers are done reading. A module that fails to read may
+         * use a module that isn't read yet as its parent, for example one nested under an earlier sibling.
+         * So it is left out of the parallel read, and read along with its own modules when the tree is
+         * put in order, which happens depth first like the serial version, once the rest of the tree is
+         * in the reactor. The projects end up in the list in the same order as with the serial version.
+         */
+        private void readChildsInParallel(MavenProject root, MavenEmbedder mavenEmbedder, final MavenEmbedderRequest mavenEmbedderRequest, List<MavenProject> mavenProjects,
+                                          ReactorReader reactorReader, int threads)
+            throws ProjectBuildingException, MavenEmbedderException, IOException {
+            final BlockingQueue<MavenEmbedder> embedders = new LinkedBlockingQueue<MavenEmbedder>();
+            try {
+                Map<MavenProject,List<Module>> childrenOf = new IdentityHashMap<MavenProject,List<Module>>();
+                List<MavenProject> level = Collections.singletonList(root);
+                while (!level.isEmpty()) {
+                    final List<Module> modules = new ArrayList<Module>();
+                    for (MavenProject mp : level) {
+                        List<Module> children = new ArrayList<Module>();
+                        childrenOf.put(mp, children);
+                        for (String module : mp.getModules()) {
+                            if ( Util.fixEmptyAndTrim( module ) == null )
+                                continue;
+                            File pomFile = new File(mp.getFile().getParent(), module);
+                            // take care of HUDSON-8445
+                            if (!(pomFile.isFile() && pomFile.exists()))
+                                pomFile = new File(mp.getFile().getParent(), module + "/pom.xml");
+                            Module m = new Module(pomFile);
+                            children.add(m);
+                            modules.add(m);
+                        }
+                    }
+
+                    final AtomicInteger next = new AtomicInteger();
+                    List<Future<?>> workers = new ArrayList<Future<?>>();
+                    for (int i=0; i<Math.min(threads, modules.size()); i++) {
+                        workers.add(POM_READERS.submit(new Callable<Void>() {
+                            public Void call() throws Exception {
+                                MavenEmbedder embedder = embedders.poll();
+                                if (embedder==null)
+                                    embedder = MavenUtil.borrowEmbedder(mavenEmbedderRequest);
+                                try {
+                                    int i;
+                                    while ((i=next.getAndIncrement())<modules.size()) {
+                                        Module m = modules.get(i);
+                                        try {
+                                            m.project = embedder.readProject(m.pomFile);
+                                        } catch (ProjectBuildingException e) {
+                                            if (verbose)
+                                                listener.getLogger().println("Failed to read "+m.pomFile+" in parallel, will retry: "+e);
+                                        }
+                                    }
+                                } finally {
+                                    embedders.add(embedder);
+                                }
+                                return null;
+                            }
+                        }));
+                    }
+                    try {
+                        for (Future<?> w : workers)
+                            w.get();
+                    } catch (ExecutionException e) {
+                        Throwable t = e.getCause();
+                        if (t instanceof MavenEmbedderException)
+                            throw (MavenEmbedderException)t;
+                        if (t instanceof IOException)
+                            throw (IOException)t;
+                        if (t instanceof RuntimeException)
+                            throw (RuntimeException)t;
+                        if (t instanceof Error)
+                            throw (Error)t;
+                        throw new IOException2(t);
+                    } finally {
+                        // don't leave workers running when the parse is given up
+                        for (Future<?> w : workers)
+                            w.cancel(true);
+                    }
+
+                    level = new ArrayList<MavenProject>(modules.size());
+                    for (Module m : modules) {
+                        if (m.project!=null) {
+                            reactorReader.addProject(m.project);
+                            level.add(m.project);
+                        }
+                    }
+                }
+
+                addDescendants(root, childrenOf, mavenEmbedder, mavenProjects, reactorReader);
+            } catch (InterruptedException e) {
+                throw (IOException)new InterruptedIOException().initCause(e);
+            } finally {
+                for (MavenEmbedder embedder : embedders)
+                    MavenUtil.releaseEmbedder(embedder);
+            }
+        }
+
+        /**
+         * Adds the modules read by {@link #readChildsInParallel} to the list depth first,
+         * reading the ones that couldn't be read in parallel on the way.
+         */
+        private void addDescendants(MavenProject mp, Map<MavenProject,List<Module>> childrenOf, MavenEmbedder mavenEmbedder,
+                                    List<MavenProject> mavenProjects, ReactorReader reactorReader)
+            throws ProjectBuildingException, MavenEmbedderException {
+            for (Module m : childrenOf.get(mp)) {
+                if (m.project==null) {
+                    MavenProject child = mavenEmbedder.readProject(m.pomFile);
+                    mavenProjects.add(child);
+                    reactorReader.addProject(child);
+                    readChilds(child, mavenEmbedder, mavenProjects, reactorReader);
+                } else {
+                    mavenProjects.add(m.project);
+                    addDescendants(m.project, childrenOf, mavenEmbedder, mavenProjects, reactorReader);
+                }
+            }
+        }
+
+        /**
+         * A module found while reading a level in {@link #readChildsInParallel}.
+         */
+        private static final class Module {
+            final File pomFile;
+            /**
+             * Null until read, and if the parallel read failed.
+             */
+            volatile MavenProject project;
+
+            Module(File pomFile) {
+                this.pomFile = pomFile;
+            }
+        }
+
+        /**
+         * Threads that read modules in parallel, shared by all the parses in this JVM.
+         */
+        private static final ExecutorService POM_READERS = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
         /**
          * Computes the path of {@link #rootPOM}.
          *
@@ -1321,6 +1690,12 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
      * Extra verbose debug switch.
      */
     public static boolean debug = Boolean.getBoolean( "hudson.maven.debug" );
+
+    /**
+     * Number of threads used to read the modules of a Maven 2 project.
+     * 1, the default, reads them one at a time. 0 means the number of processors on the node, up to 4.
+     */
+    public static int POM_PARSER_THREADS = Integer.getInteger( MavenModuleSetBuild.class.getName()+".pomParserThreads", 1 );
     
     @Override
     public MavenModuleSet getParent() {// don't know why, but javac wants this
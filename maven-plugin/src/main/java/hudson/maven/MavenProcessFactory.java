@@ -23,9 +23,9 @@ import hudson.maven.agent.Maven21Interceptor;
 import hudson.model.BuildListener;
 import hudson.model.Hudson;
 import hudson.model.JDK;
+import hudson.model.Node;
 import hudson.model.Run.RunnerAbortedException;
 import hudson.model.TaskListener;
-import hudson.remoting.Callable;
 import hudson.remoting.Which;
 import hudson.tasks.Maven.MavenInstallation;
 import hudson.util.ArgumentListBuilder;
@@ -50,12 +50,20 @@ final class MavenProcessFactory extends AbstractMavenProcessFactory implements P
         super( mms, launcher, envVars, workDir );
     }
 
+    MavenProcessFactory(MavenModuleSet mms, Launcher launcher, EnvVars envVars, FilePath workDir, Node node) {
+        super( mms, launcher, envVars, workDir, node );
+    }
+
+    MavenProcessFactory(Launcher launcher, EnvVars envVars, FilePath workDir, Node node, String mavenOpts, MavenInstallation installation, JDK jdk) {
+        super( launcher, envVars, workDir, node, mavenOpts, installation, jdk );
+    }
+
     /**
      * Builds the command line argument list to launch the maven process.
      *
      * UGLY.
      */
-    protected ArgumentListBuilder buildMavenAgentCmdLine(BuildListener listener,int tcpPort) throws IOException, InterruptedException {
+    protected ArgumentListBuilder buildMavenAgentCmdLine(BuildListener listener,int tcpPort,NodeInfo nodeInfo) throws IOException, InterruptedException {
         MavenInstallation mvn = getMavenInstallation(listener);
         if(mvn==null) {
             listener.error("Maven version is not configured for this project. Can't determine which Maven to run");
@@ -67,7 +75,7 @@ final class MavenProcessFactory extends AbstractMavenProcessFactory implements P
         }
 
         // find classworlds.jar
-        String classWorldsJar = getLauncher().getChannel().call(new GetClassWorldsJar(mvn.getHome(),listener));
+        String classWorldsJar = findClassWorldsJar(nodeInfo,mvn.getHome(),listener);
 
         boolean isMaster = getCurrentNode()== Hudson.getInstance();
         FilePath slaveRoot=null;
@@ -103,7 +111,7 @@ final class MavenProcessFactory extends AbstractMavenProcessFactory implements P
         args.add(mvn.getHome());
 
         // remoting.jar
-        String remotingJar = getLauncher().getChannel().call(new GetRemotingJar());
+        String remotingJar = getRemotingJar(nodeInfo);
         if(remotingJar==null) {// this shouldn't be possible, but there are still reports indicating this, so adding a probe here.
             listener.error("Failed to determine the location of slave.jar");
             throw new RunnerAbortedException();
@@ -131,30 +139,17 @@ final class MavenProcessFactory extends AbstractMavenProcessFactory implements P
     /**
      * Finds classworlds.jar
      */
-    private static final class GetClassWorldsJar implements Callable<String,IOException> {
-        private final String mvnHome;
-        private final TaskListener listener;
-
-        private GetClassWorldsJar(String mvnHome, TaskListener listener) {
-            this.mvnHome = mvnHome;
-            this.listener = listener;
-        }
-
-        public String call() throws IOException {
-            File home = new File(mvnHome);
-            File bootDir = new File(home, "core/boot");
-            File[] classworlds = bootDir.listFiles(CLASSWORLDS_FILTER);
-            if(classworlds==null || classworlds.length==0) {
-                // Maven 2.0.6 puts it to a different place
-                bootDir = new File(home, "boot");
-                classworlds = bootDir.listFiles(CLASSWORLDS_FILTER);
-                if(classworlds==null || classworlds.length==0) {
-                    listener.error(Messages.MavenProcessFactory_ClassWorldsNotFound(home));
-                    throw new RunnerAbortedException();
-                }
+    private String findClassWorldsJar(NodeInfo nodeInfo, String mvnHome, TaskListener listener) {
+        String classworlds = findBootJar(nodeInfo, mvnHome, "core/boot", CLASSWORLDS_FILTER);
+        if(classworlds==null) {
+            // Maven 2.0.6 puts it to a different place
+            classworlds = findBootJar(nodeInfo, mvnHome, "boot", CLASSWORLDS_FILTER);
+            if(classworlds==null) {
+                listener.error(Messages.MavenProcessFactory_ClassWorldsNotFound(new File(mvnHome)));
+                throw new RunnerAbortedException();
             }
-            return classworlds[0].getAbsolutePath();
         }
+        return classworlds;
     }
     
     /**
@@ -83,6 +83,18 @@ public class MavenUtil {
      * @see #createEmbedder(TaskListener, File, String)
      */
     public static MavenEmbedder createEmbedder(TaskListener listener, AbstractBuild<?,?> build) throws MavenEmbedderException, IOException, InterruptedException {
+        return createEmbedder(createEmbedderRequest(listener,build));
+    }
+
+    /**
+     * Like {@link #createEmbedder(TaskListener, AbstractBuild)}, but reuses a pooled embedder if possible.
+     * The embedder must be given back with {@link #releaseEmbedder(MavenEmbedder)}.
+     */
+    public static MavenEmbedder borrowEmbedder(TaskListener listener, AbstractBuild<?,?> build) throws MavenEmbedderException, IOException, InterruptedException {
+        return borrowEmbedder(createEmbedderRequest(listener,build));
+    }
+
+    private static MavenEmbedderRequest createEmbedderRequest(TaskListener listener, AbstractBuild<?,?> build) throws IOException, InterruptedException {
         MavenInstallation m=null;
         File settingsLoc = null;
         String profiles = null;
@@ -107,12 +119,12 @@ public class MavenUtil {
             systemProperties = ((MavenModuleSet) project).getMavenProperties();
         }
         
-        return createEmbedder(new MavenEmbedderRequest(listener,
+        return new MavenEmbedderRequest(listener,
                               m!=null?m.getHomeDir():null,
                               profiles,
                               systemProperties,
                               privateRepository,
-                              settingsLoc ));
+                              settingsLoc );
     }
 
     public static MavenEmbedder createEmbedder(TaskListener listener, File mavenHome, String profiles) throws MavenEmbedderException, IOException {
@@ -131,6 +143,23 @@ public class MavenUtil {
                                                          privateRepository, null ) );
     }
 
+    /**
+     * Gets a {@link MavenEmbedder} for the given request, reusing an idle one
+     * from an earlier request with the same configuration if there's any.
+     * The listener and the transfer listener of the request may be replaced in the process.
+     * The embedder must be given back with {@link #releaseEmbedder(MavenEmbedder)}.
+     */
+    public static MavenEmbedder borrowEmbedder(MavenEmbedderRequest mavenEmbedderRequest) throws MavenEmbedderException, IOException {
+        return MavenEmbedderPool.borrow(mavenEmbedderRequest);
+    }
+
+    /**
+     * Gives back an embedder obtained from {@link #borrowEmbedder(MavenEmbedderRequest)}.
+     */
+    public static void releaseEmbedder(MavenEmbedder embedder) {
+        MavenEmbedderPool.release(embedder);
+    }
+
     /**
      * Creates a fresh {@link MavenEmbedder} instance.
      *
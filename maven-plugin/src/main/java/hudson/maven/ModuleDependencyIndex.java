@@ -0,0 +1,157 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps {@link ModuleDependency}s to the {@link MavenModule}s that produce them, across the whole Hudson.
+ *
+ * <p>
+ * Computing the dependency graph needs to find the upstream module of every dependency of every module.
+ * Instead of scanning all the modules for each of them, modules register themselves here
+ * when they are loaded or reconfigured, and unregister when they or their project are deleted.
+ * A module that gets loaded again, for example when the configuration is reloaded from disk,
+ * replaces the earlier instance with the same name. Modules are registered again when their
+ * project is renamed, so that the names they are known by stay current.
+ * Whether a module is disabled is checked at lookup time, since that also depends on its parent.
+ */
+final class ModuleDependencyIndex {
+    private ModuleDependencyIndex() {}
+
+    /**
+     * What the index needs to know about a module. Implemented by {@link MavenModule}.
+     */
+    interface Indexed {
+        ModuleDependency asDependency();
+        String getFullName();
+        MavenModuleSet getParent();
+        boolean isDisabled();
+    }
+
+    /**
+     * Modules by their coordinates, with and without the version. Most recently registered last.
+     */
+    private static final Map<ModuleDependency,List<Indexed>> index = new HashMap<ModuleDependency,List<Indexed>>();
+
+    /**
+     * How each module is currently registered.
+     */
+    private static final Map<Indexed,Registration> registered = new IdentityHashMap<Indexed,Registration>();
+
+    /**
+     * Registered modules by their full name.
+     */
+    private static final Map<String,Indexed> byName = new HashMap<String,Indexed>();
+
+    private static final class Registration {
+        final ModuleDependency dependency;
+        final String name;
+
+        Registration(ModuleDependency dependency, String name) {
+            this.dependency = dependency;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Registers the module with its current coordinates and name, replacing the earlier registration, if any.
+     */
+    static synchronized void update(Indexed m) {
+        ModuleDependency d = m.asDependency();
+        String name = m.getFullName();
+        Registration r = registered.get(m);
+        if (r!=null && r.dependency.equals(d) && r.name.equals(name))
+            return;
+        remove(m);
+
+        Indexed old = byName.put(name,m);
+        // an instance of the same module that was loaded earlier. one that was renamed since is a different module.
+        if (old!=null && old.getFullName().equals(name))
+            remove(old);
+
+        registered.put(m,new Registration(d,name));
+        // when we load old data that doesn't record version in dependency, we'd like
+        // to emulate the old behavior that it tries to identify the upstream by ignoring the version.
+        add(d,m);
+        add(d.withUnknownVersion(),m);
+    }
+
+    static synchronized void remove(Indexed m) {
+        Registration r = registered.remove(m);
+        if (r==null)
+            return;
+        if (byName.get(r.name)==m)
+            byName.remove(r.name);
+        remove(r.dependency,m);
+        remove(r.dependency.withUnknownVersion(),m);
+    }
+
+    /**
+     * Unregisters all the modules of a project.
+     */
+    static synchronized void remove(MavenModuleSet p) {
+        for (Indexed m : new ArrayList<Indexed>(registered.keySet())) {
+            if (m.getParent()==p)
+                remove(m);
+        }
+    }
+
+    /**
+     * Finds the enabled module that produces the given dependency.
+     *
+     * @param preferred
+     *      In case two modules with the same name are defined, modules of this project take precedence.
+     * @return null if there's no such module.
+     */
+    static synchronized Indexed find(ModuleDependency d, MavenModuleSet preferred) {
+        List<Indexed> candidates = index.get(d);
+        if (candidates==null)
+            return null;
+
+        Indexed r = null;
+        for (Indexed m : candidates) {
+            if (m.isDisabled())
+                continue;
+            if (m.getParent()==preferred)
+                return m;
+            r = m;
+        }
+        return r;
+    }
+
+    private static void add(ModuleDependency d, Indexed m) {
+        List<Indexed> l = index.get(d);
+        if (l==null)
+            index.put(d, l=new ArrayList<Indexed>(1));
+        l.add(m);
+    }
+
+    private static void remove(ModuleDependency d, Indexed m) {
+        List<Indexed> l = index.get(d);
+        if (l==null)
+            return;
+        for (Iterator<Indexed> itr = l.iterator(); itr.hasNext();) {
+            if (itr.next()==m)
+                itr.remove();
+        }
+        if (l.isEmpty())
+            index.remove(d);
+    }
+}
@@ -32,6 +32,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 import hudson.util.InvocationInterceptor;
 import hudson.util.ReflectionUtils;
@@ -80,9 +82,20 @@ public class MojoInfo {
 
     /**
      * Used to obtain a value from {@link PlexusConfiguration} as a typed object,
-     * instead of String.
+     * instead of String. Created on first use.
      */
-    private final ConverterLookup converterLookup = new DefaultConverterLookup();
+    private ConverterLookup converterLookup;
+
+    /**
+     * Class loader of the plugin, created on first use.
+     */
+    private ClassLoader pluginClassLoader;
+
+    /**
+     * Values already returned by {@link #getConfigurationValue(String, Class)}, keyed by name and type.
+     * Reporters tend to ask for the same values, so they are only converted once per {@link MojoInfo}.
+     */
+    private final Map<String,Object> configurationValues = new HashMap<String,Object>();
 
     public MojoInfo(MojoExecution mojoExecution, Mojo mojo, PlexusConfiguration configuration, ExpressionEvaluator expressionEvaluator) {
         this.mojo = mojo;
@@ -120,29 +133,51 @@ public class MojoInfo {
      *      the configuration in POM is syntactically incorrect. 
      */
     public <T> T getConfigurationValue(String configName, Class<T> type) throws ComponentConfigurationException {
+        String key = configName+':'+type.getName();
+        if (configurationValues.containsKey(key))
+            return type.cast(configurationValues.get(key));
+
         PlexusConfiguration child = configuration.getChild(configName);
         if(child==null) return null;    // no such config
-       
-        ClassLoader cl = null;
-        PluginDescriptor pd = mojoExecution.getMojoDescriptor().getPluginDescriptor();
-        // for maven2 builds ClassRealm doesn't extends ClassLoader !
-        // so check stuff with reflection
-        Method method = ReflectionUtils.getPublicMethodNamed( pd.getClass(), "getClassRealm" );
-       
-        if ( ReflectionUtils.invokeMethod( method, pd ) instanceof ClassRealm)
-        {
-            ClassRealm cr = (ClassRealm) ReflectionUtils.invokeMethod( method, pd );
-            cl = cr.getClassLoader();
-        } else {
-            cl = mojoExecution.getMojoDescriptor().getPluginDescriptor().getClassRealm();
-        }
+
+        if (converterLookup==null)
+            converterLookup = new DefaultConverterLookup();
         ConfigurationConverter converter = converterLookup.lookupConverterForType(type);
-        return type.cast(converter.fromConfiguration(converterLookup,child,type,
+        T value = type.cast(converter.fromConfiguration(converterLookup,child,type,
             // the implementation seems to expect the type of the bean for which the configuration is done
             // in this parameter, but we have no such type. So passing in a dummy
             Object.class,
-            cl,
+            getPluginClassLoader(),
             expressionEvaluator));
+        configurationValues.put(key,value);
+        return value;
+    }
+
+    private ClassLoader getPluginClassLoader() {
+        if (pluginClassLoader==null) {
+            PluginDescriptor pd = mojoExecution.getMojoDescriptor().getPluginDescriptor();
+            // for maven2 builds ClassRealm doesn't extends ClassLoader !
+            // so check stuff with reflection
+            Object realm = ReflectionUtils.invokeMethod( getClassRealmMethod( pd.getClass() ), pd );
+            if ( realm instanceof ClassRealm )
+            {
+                pluginClassLoader = ( (ClassRealm) realm ).getClassLoader();
+            } else {
+                pluginClassLoader = pd.getClassRealm();
+            }
+        }
+        return pluginClassLoader;
+    }
+
+    private static Method getClassRealmMethod(Class<?> pluginDescriptorClass) {
+        synchronized (classRealmMethods) {
+            Method method = classRealmMethods.get(pluginDescriptorClass);
+            if (method==null) {
+                method = ReflectionUtils.getPublicMethodNamed( pluginDescriptorClass, "getClassRealm" );
+                classRealmMethods.put(pluginDescriptorClass,method);
+            }
+            return method;
+        }
     }
 
     /**
@@ -233,4 +268,9 @@ public class MojoInfo {
             }
         }
     }
+
+    /**
+     * {@code PluginDescriptor.getClassRealm()} by the class of the plugin descriptor, which differs between Maven 2 and 3.
+     */
+    private static final Map<Class<?>,Method> classRealmMethods = new HashMap<Class<?>,Method>();
 }
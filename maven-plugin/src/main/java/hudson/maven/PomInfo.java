@@ -226,6 +226,41 @@ final class PomInfo implements Serializable {
         return isDependencisesSimilar(pomInfo);
     }
 
+    /**
+     * Unlike {@link #equals(Object)}, which only looks at the coordinates and the dependencies,
+     * compares every field that gets persisted with the module, the parents included.
+     */
+    /*package*/ boolean isIdenticalTo(PomInfo pom) {
+        if (pom == this) {
+            return true;
+        }
+        if (pom == null || !equals(pom)) {
+            return false;
+        }
+        return name.equals(pom.name)
+            && StringUtils.equals(displayName, pom.displayName)
+            && StringUtils.equals(relativePath, pom.relativePath)
+            && StringUtils.equals(version, pom.version)
+            && StringUtils.equals(defaultGoal, pom.defaultGoal)
+            && children.equals(pom.children)
+            && isNotifierIdentical(mailNotifier, pom.mailNotifier)
+            && (parent == null ? pom.parent == null : parent.isIdenticalTo(pom.parent));
+    }
+
+    private static boolean isNotifierIdentical(Notifier a, Notifier b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        // Notifier doesn't override equals
+        return StringUtils.equals(a.getType(), b.getType())
+            && StringUtils.equals(a.getAddress(), b.getAddress())
+            && a.isSendOnError() == b.isSendOnError()
+            && a.isSendOnFailure() == b.isSendOnFailure()
+            && a.isSendOnSuccess() == b.isSendOnSuccess()
+            && a.isSendOnWarning() == b.isSendOnWarning()
+            && a.getConfiguration().equals(b.getConfiguration());
+    }
+
     private boolean isDependencisesSimilar(PomInfo pom){
 
         if (pom.dependencies.size() != dependencies.size()){
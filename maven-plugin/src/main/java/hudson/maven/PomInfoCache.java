@@ -0,0 +1,158 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the {@link PomInfo}s computed by the POM parser on a node, so that the
+ * next build can skip the embedder altogether when none of the files it looked at has changed.
+ *
+ * <p>
+ * The caller builds the key out of everything else the parse depends on
+ * (Maven version, profiles, properties, settings location, ...). The cache then
+ * checks every POM the embedder read and the settings files by their content.
+ * Parent POMs that were resolved from a repository and not from a file are not tracked.
+ *
+ * <p>
+ * The cache lives in the JVM that runs the parser, so each node has its own.
+ */
+final class PomInfoCache {
+    private PomInfoCache() {}
+
+    private static final class Entry {
+        final Map<String,FileState> files;
+        final List<PomInfo> infos;
+
+        Entry(Map<String,FileState> files, List<PomInfo> infos) {
+            this.files = files;
+            this.infos = infos;
+        }
+    }
+
+    /**
+     * What a file looked like when the entry was created.
+     */
+    private static final class FileState {
+        final long length;
+        final long lastModified;
+        /**
+         * MD5 of the contents, or null if the file didn't exist.
+         */
+        final String digest;
+
+        FileState(File f) throws IOException {
+            length = f.length();
+            lastModified = f.lastModified();
+            digest = f.exists() ? digestOf(f) : null;
+        }
+
+        boolean isCurrent(File f) throws IOException {
+            if (!f.exists())
+                return digest==null;
+            if (digest==null)
+                return false;
+            if (f.length()==length && f.lastModified()==lastModified)
+                return true;
+            // a fresh checkout touches the timestamp of files that didn't change
+            return f.length()==length && digest.equals(digestOf(f));
+        }
+
+        private static String digestOf(File f) throws IOException {
+            InputStream in = new FileInputStream(f);
+            try {
+                return Util.getDigestOf(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static final Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+            return size()>MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Returns the result of an earlier parse with the same key,
+     * or null if there's none or if any of the files it depends on changed.
+     */
+    static List<PomInfo> get(String key) {
+        Entry e;
+        synchronized (entries) {
+            e = entries.get(key);
+        }
+        if (e==null)
+            return null;
+
+        try {
+            for (Map.Entry<String,FileState> f : e.files.entrySet()) {
+                if (!f.getValue().isCurrent(new File(f.getKey())))
+                    return null;
+            }
+        } catch (IOException x) {
+            LOGGER.log(Level.FINE, "Failed to check "+key, x);
+            return null;
+        }
+        return new ArrayList<PomInfo>(e.infos);
+    }
+
+    /**
+     * Records the result of a parse.
+     *
+     * @param files
+     *      All the files the parse depended on. Files that don't exist are recorded as such,
+     *      so that creating them later invalidates the entry.
+     */
+    static void put(String key, Collection<File> files, List<PomInfo> infos) {
+        Map<String,FileState> states = new HashMap<String,FileState>();
+        try {
+            for (File f : files)
+                states.put(f.getAbsolutePath(), new FileState(f));
+        } catch (IOException x) {
+            LOGGER.log(Level.FINE, "Failed to record "+key, x);
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(states, new ArrayList<PomInfo>(infos)));
+        }
+    }
+
+    /**
+     * Set to false to always parse POMs with the embedder.
+     */
+    public static boolean ENABLED = !Boolean.getBoolean(PomInfoCache.class.getName()+".disable");
+
+    /**
+     * Number of parse results kept per node.
+     */
+    public static int MAX_ENTRIES = Integer.getInteger(PomInfoCache.class.getName()+".size",20);
+
+    private static final Logger LOGGER = Logger.getLogger(PomInfoCache.class.getName());
+}
@@ -16,26 +16,47 @@
 
 package hudson.maven;
 
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
 import hudson.Util;
 import hudson.Proc;
 import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.model.Hudson;
 import hudson.model.JDK;
+import hudson.model.Node;
+import hudson.model.PeriodicWork;
+import hudson.model.StreamBuildListener;
 import hudson.model.TaskListener;
 import hudson.remoting.Callable;
 import hudson.remoting.Channel;
 import hudson.remoting.VirtualChannel;
 import hudson.remoting.RequestAbortedException;
+import hudson.slaves.EnvironmentVariablesNodeProperty;
+import hudson.slaves.NodeProperty;
 import hudson.tasks.Maven.MavenInstallation;
+import hudson.tools.ToolInstallation;
 import hudson.util.DelegatingOutputStream;
+import hudson.util.IOException2;
 import hudson.util.NullStream;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.WeakHashMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -59,6 +80,15 @@ public final class ProcessCache {
         String getMavenOpts();
         MavenInstallation getMavenInstallation(TaskListener listener) throws IOException, InterruptedException;
         JDK getJava(TaskListener listener) throws IOException, InterruptedException;
+        /**
+         * The node on which the processes are launched.
+         */
+        Node getCurrentNode();
+        /**
+         * The directory the processes are launched in, or null if they are launched wherever the node sees fit.
+         * A process is only reused in the directory it was launched in, since its working directory can't be changed.
+         */
+        String getWorkDir();
     }
 
     public static class NewProcess {
@@ -71,6 +101,17 @@ public final class ProcessCache {
         }
     }
 
+    /**
+     * Thrown by {@link MavenProcess#call(Callable)} when a process from the cache turns out to be gone.
+     */
+    static final class StaleProcessException extends IOException2 {
+        StaleProcessException(IOException cause) {
+            super("The cached maven process is gone",cause);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
     class MavenProcess {
         /**
          * Channel connected to the maven process.
@@ -84,49 +125,95 @@ public final class ProcessCache {
         final Proc proc;
         private final MavenInstallation installation;
         private final JDK jdk;
-        private final RedirectableOutputStream output;
         /**
-         * System properties captured right after the process is created.
-         * Each time the process is reused, the system properties are reset,
-         * since Maven corrupts them as a side-effect of the build.
+         * The working directory of this VM, or null if it was launched without one.
          */
-        private final Properties systemProperties;
+        private final String workDir;
+        private final RedirectableOutputStream output;
 
         private int age = 0;
 
-        MavenProcess(PerChannel parent, String mavenOpts, MavenInstallation installation, JDK jdk, NewProcess np, RedirectableOutputStream output) throws IOException, InterruptedException {
+        /**
+         * When this process was last returned to the cache.
+         */
+        private long idleSince;
+
+        /**
+         * Resource usage sampled after the first build, used to detect leaks in later builds.
+         */
+        private ProcessRetirementPolicy.Sample baseline;
+
+        /**
+         * True from the moment this process is handed out of the cache again
+         * until the first call has been made on it.
+         */
+        private boolean reused;
+
+        MavenProcess(PerChannel parent, String mavenOpts, MavenInstallation installation, JDK jdk, String workDir, NewProcess np, RedirectableOutputStream output) throws IOException, InterruptedException {
             this.parent = parent;
             this.mavenOpts = mavenOpts;
+            this.workDir = workDir;
             this.channel = np.channel;
             this.proc = np.proc;
             this.installation = installation;
             this.jdk = jdk;
             this.output = output;
-            this.systemProperties = channel.call(new GetSystemProperties());
+            // a process that dies while it's idle is dropped right away,
+            // but one whose channel is not yet known to be broken is only caught by the first call of the next build
+            channel.addListener(new Channel.Listener() {
+                @Override
+                public void onClosed(Channel channel, IOException cause) {
+                    MavenProcess.this.parent.processes.remove(MavenProcess.this);
+                }
+            });
         }
 
         public String getMavenOpts() {
             return mavenOpts;
         }
         
-        boolean matches(String mavenOpts,MavenInstallation installation, JDK jdk) {
+        boolean matches(String mavenOpts,MavenInstallation installation, JDK jdk, String workDir) {
+            // tool installations are translated per node and per build, so compare them by value
             return Util.fixNull(this.mavenOpts).equals(Util.fixNull(mavenOpts))
-                && this.installation==installation
-                && this.jdk==jdk;
+                && sameTool(this.installation,installation)
+                && sameTool(this.jdk,jdk)
+                && Util.fixNull(this.workDir).equals(Util.fixNull(workDir));
         }
 
         public void recycle() throws IOException {
-            if(age>=MAX_AGE || maxProcess==0)
-                discard();
-            else {
-                output.set(new NullStream());
-                // make room for the new process and reuse.
-                synchronized(parent.processes) {
-                    while(parent.processes.size()>=maxProcess)
-                        parent.processes.removeFirst().discard();
-                    parent.processes.add(this);
-                }
+            String reason = maxProcess==0 ? "caching is disabled" : getRetirementReason();
+            if(reason!=null) {
+                LOGGER.fine("Retiring the maven process: "+reason);
+                close();
+            } else
+                park();
+            warmUp(parent);
+        }
+
+        /**
+         * Checks the health of this process with {@link ProcessRetirementPolicy}.
+         *
+         * @return
+         *      null if this process can be reused, otherwise the reason why it shouldn't be.
+         */
+        private String getRetirementReason() {
+            if(age>=MAX_AGE)
+                return "it has been used "+(age+1)+" times";
+            ProcessRetirementPolicy.Sample sample;
+            try {
+                sample = channel.call(new ProcessRetirementPolicy.Sampler());
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE,"Failed to sample the maven process",e);
+                return "it failed to respond";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "interrupted";
             }
+            if(baseline==null)
+                baseline = sample;
+            if(LOGGER.isLoggable(Level.FINER))
+                LOGGER.finer("Maven process after build #"+(age+1)+": "+sample);
+            return ProcessRetirementPolicy.check(baseline,sample);
         }
 
         /**
@@ -134,6 +221,34 @@ public final class ProcessCache {
          * It won't be reused in future builds.
          */
         public void discard() {
+            close();
+            warmUp(parent);
+        }
+
+        /**
+         * Puts this process into the cache as an idle process.
+         */
+        private void park() {
+            output.set(new NullStream());
+            idleSince = System.currentTimeMillis();
+            parent.processes.addLast(this);
+            // make room by evicting the least recently used processes.
+            // processes are kept in the order they became idle, so those are at the head.
+            while(parent.processes.size()>maxProcess) {
+                MavenProcess p = parent.processes.pollFirst();
+                if(p!=null)
+                    p.close();
+            }
+        }
+
+        private boolean isIdleTooLong(long now) {
+            return now-idleSince > IDLE_TIMEOUT;
+        }
+
+        /**
+         * Terminates the process without triggering the warm up.
+         */
+        private void close() {
             try {
                 channel.close();
             } catch (IOException e) {
@@ -143,8 +258,15 @@ public final class ProcessCache {
 
         /**
          * Calls a {@link Callable} on the channel, with additional error diagnostics.
+         *
+         * @throws StaleProcessException
+         *      If this is the first call on a process handed out of the cache, and the call
+         *      couldn't be sent because the process died while it was idle. The callable didn't run,
+         *      so the caller can discard this process and make the call on a new one.
          */
         public <V,T extends Throwable> V call(Callable<V,T> callable) throws T, IOException, InterruptedException {
+            boolean firstCall = reused;
+            reused = false;
             try {
                 return channel.call(callable);
             } catch (RequestAbortedException e) {
@@ -158,19 +280,90 @@ public final class ProcessCache {
                     LOGGER.log(Level.FINE,msg,e);
                     throw new hudson.AbortException(msg);
                 }
+            } catch (IOException e) {
+                // the request never left, as opposed to being aborted on its way
+                if(firstCall && !proc.isAlive()) {
+                    LOGGER.log(Level.FINE,"The cached maven process is gone",e);
+                    throw new StaleProcessException(e);
+                }
+                throw e;
             }
         }
     }
 
     static class PerChannel {
         /**
-         * Cached processes.
+         * Cached idle processes, least recently used first.
+         * A build claims a process by removing it from here, so checking out
+         * a process never blocks on other builds doing the same.
+         */
+        private final BlockingDeque<MavenProcess> processes = new LinkedBlockingDeque<MavenProcess>();
+
+        /**
+         * Name of the node this channel belongs to, or null if no build has run on it yet.
+         */
+        private volatile String nodeName;
+
+        /**
+         * True while the warm pool of this channel is being filled.
+         */
+        private final AtomicBoolean warming = new AtomicBoolean();
+    }
+
+    /**
+     * Remembers what kind of processes a build asked for on a node,
+     * so that we can launch the same kind of processes ahead of time.
+     *
+     * <p>
+     * Only the parameters that a process is matched by are kept. Anything that belongs to the build,
+     * such as its project or its environment, is not, so that it doesn't stay reachable and doesn't
+     * end up in processes launched long after the build.
+     */
+    private static final class Recipe {
+        final boolean maven3;
+        final String mavenOpts;
+        final MavenInstallation installation;
+        final JDK jdk;
+        final String workDir;
+        long lastUsed;
+
+        Recipe(boolean maven3, String mavenOpts, MavenInstallation installation, JDK jdk, String workDir) {
+            this.maven3 = maven3;
+            this.mavenOpts = mavenOpts;
+            this.installation = installation;
+            this.jdk = jdk;
+            this.workDir = workDir;
+        }
+
+        boolean matches(MavenProcess p) {
+            return p.matches(mavenOpts,installation,jdk,workDir);
+        }
+
+        boolean matches(String mavenOpts, MavenInstallation installation, JDK jdk, String workDir) {
+            return Util.fixNull(this.mavenOpts).equals(Util.fixNull(mavenOpts))
+                && sameTool(this.installation,installation) && sameTool(this.jdk,jdk)
+                && Util.fixNull(this.workDir).equals(Util.fixNull(workDir));
+        }
+
+        /**
+         * Creates a factory that launches this kind of process on the given node, outside of a build.
          */
-        private final LinkedList<MavenProcess> processes = new LinkedList<MavenProcess>();
+        Factory createFactory(Node node, Launcher launcher, EnvVars envVars) {
+            FilePath dir = workDir==null ? null : node.createPath(workDir);
+            if(maven3)
+                return new Maven3ProcessFactory(launcher,envVars,dir,node,mavenOpts,installation,jdk);
+            else
+                return new MavenProcessFactory(launcher,envVars,dir,node,mavenOpts,installation,jdk);
+        }
     }
 
     // use WeakHashMap to avoid keeping VirtualChannel in memory.
     private final Map<VirtualChannel,PerChannel> cache = new WeakHashMap<VirtualChannel,PerChannel>();
+    /**
+     * Recently requested process kinds, keyed by the node name.
+     * Unlike {@link #cache} this survives reconnection of the node.
+     */
+    private final Map<String,List<Recipe>> recipes = new HashMap<String,List<Recipe>>();
     private final int maxProcess;
 
     /**
@@ -181,6 +374,9 @@ public final class ProcessCache {
         this.maxProcess = maxProcess;
     }
 
+    /**
+     * Only held for the map lookup, never while talking to a process.
+     */
     private synchronized PerChannel get(VirtualChannel owner) {
         PerChannel r = cache.get(owner);
         if(r==null)
@@ -195,69 +391,263 @@ public final class ProcessCache {
         String mavenOpts = factory.getMavenOpts();
         MavenInstallation installation = factory.getMavenInstallation(listener);
         JDK jdk = factory.getJava(listener);
+        String workDir = factory.getWorkDir();
 
         PerChannel list = get(owner);
-        synchronized(list.processes) {
-            for (Iterator<MavenProcess> itr = list.processes.iterator(); itr.hasNext();) {
-                MavenProcess p =  itr.next();
-                if(p.matches(mavenOpts,installation,jdk)) {
-                    // reset the system property.
-                    // this also serves as the sanity check.
-                    try {
-                        p.call(new SetSystemProperties(p.systemProperties));
-                    } catch (IOException e) {
-                        p.discard();
-                        itr.remove();
-                        continue;
-                    }
+        Node node = factory.getCurrentNode();
+        if(node!=null) {
+            list.nodeName = node.getNodeName();
+            remember(list.nodeName,factory,mavenOpts,installation,jdk,workDir);
+        }
 
-                    listener.getLogger().println(Messages.ProcessCache_Reusing());
-                    itr.remove();
-                    p.age++;
-                    p.output.set(listener.getLogger());
-                    return p;
-                }
+        long now = System.currentTimeMillis();
+        // prefer the most recently used process, so that rarely used ones age out through IDLE_TIMEOUT
+        for (Iterator<MavenProcess> itr = list.processes.descendingIterator(); itr.hasNext();) {
+            MavenProcess p =  itr.next();
+            if(p.isIdleTooLong(now)) {
+                if(list.processes.remove(p))
+                    p.close();
+                continue;
+            }
+            if(p.matches(mavenOpts,installation,jdk,workDir)) {
+                // claim the process. if somebody else got it first, keep looking.
+                // the system properties are reset by the builder, as a part of the build.
+                if(!list.processes.remove(p))
+                    continue;
+
+                listener.getLogger().println(Messages.ProcessCache_Reusing());
+                p.age++;
+                p.reused = true;
+                p.output.set(listener.getLogger());
+                return p;
             }
         }
 
         RedirectableOutputStream out = new RedirectableOutputStream(listener.getLogger());
-        return new MavenProcess(list,mavenOpts,installation,jdk,factory.newProcess(listener,out),out);
+        return new MavenProcess(list,mavenOpts,installation,jdk,workDir,factory.newProcess(listener,out),out);
     }
 
+    private void remember(String nodeName, Factory factory, String mavenOpts, MavenInstallation installation, JDK jdk, String workDir) {
+        if(WARM_POOL_SIZE<=0)   return;
+        synchronized(recipes) {
+            List<Recipe> list = recipes.get(nodeName);
+            if(list==null)
+                recipes.put(nodeName,list=new LinkedList<Recipe>());
+            for (Iterator<Recipe> itr = list.iterator(); itr.hasNext();) {
+                if(itr.next().matches(mavenOpts,installation,jdk,workDir))
+                    itr.remove();
+            }
+            Recipe r = new Recipe(factory instanceof Maven3ProcessFactory,mavenOpts,installation,jdk,workDir);
+            r.lastUsed = System.currentTimeMillis();
+            list.add(0,r);
+            while(list.size()>maxProcess)
+                list.remove(list.size()-1);
+        }
+    }
 
+    /**
+     * Returns the process kinds that were requested on the given node within {@link #IDLE_TIMEOUT}.
+     */
+    private List<Recipe> getRecentRecipes(String nodeName) {
+        synchronized(recipes) {
+            List<Recipe> r = new ArrayList<Recipe>();
+            List<Recipe> list = recipes.get(nodeName);
+            if(list!=null) {
+                long now = System.currentTimeMillis();
+                for (Recipe recipe : list)
+                    if(now-recipe.lastUsed <= IDLE_TIMEOUT)
+                        r.add(recipe);
+            }
+            return r;
+        }
+    }
 
-    public static int MAX_AGE = 5;
+    /**
+     * Launches idle Maven processes in the background on a computer that just came online,
+     * for the kinds of processes recently used on that node.
+     */
+    public void warmUp(Computer c) {
+        VirtualChannel owner = c.getChannel();
+        Node node = c.getNode();
+        if(owner==null || node==null)   return;
+        PerChannel list = get(owner);
+        list.nodeName = node.getNodeName();
+        warmUp(list);
+    }
 
-    static {
-        String age = System.getProperty(ProcessCache.class.getName() + ".age");
-        if(age!=null)
-            MAX_AGE = Integer.parseInt(age);
+    /**
+     * Tops up the idle processes of the given channel in the background,
+     * up to {@link #WARM_POOL_SIZE} per process kind.
+     */
+    private void warmUp(final PerChannel list) {
+        if(WARM_POOL_SIZE<=0 || maxProcess==0 || list.nodeName==null)
+            return;
+        if(!list.warming.compareAndSet(false,true))
+            return; // somebody else is already doing it
+        Computer.threadPoolForRemoting.submit(new Runnable() {
+            public void run() {
+                try {
+                    fillPool(list);
+                } finally {
+                    list.warming.set(false);
+                }
+            }
+        });
+    }
+
+    private void fillPool(PerChannel list) {
+        String nodeName = list.nodeName;
+        Node node = nodeName.length()==0 ? Hudson.getInstance() : Hudson.getInstance().getNode(nodeName);
+        if(node==null)  return; // node is gone
+        Computer computer = node.toComputer();
+        if(computer==null)  return;
+
+        BuildListener listener = new StreamBuildListener(new NullStream());
+        for (Recipe recipe : getRecentRecipes(nodeName)) {
+            while(true) {
+                long now = System.currentTimeMillis();
+                long memory = 0;
+                int idle = 0;
+                for (MavenProcess p : list.processes) {
+                    if(p.isIdleTooLong(now)) {
+                        if(list.processes.remove(p))
+                            p.close();
+                        continue;
+                    }
+                    memory += estimateMemory(p.mavenOpts);
+                    if(recipe.matches(p))
+                        idle++;
+                }
+                if(idle>=WARM_POOL_SIZE || list.processes.size()>=maxProcess
+                || memory+estimateMemory(recipe.mavenOpts)>MEMORY_BUDGET)
+                    break;
+
+                try {
+                    Factory factory = recipe.createFactory(node,node.createLauncher(listener),getEnvironment(node,computer));
+                    RedirectableOutputStream out = new RedirectableOutputStream(new NullStream());
+                    MavenProcess p = new MavenProcess(list,factory.getMavenOpts(),
+                            factory.getMavenInstallation(listener),factory.getJava(listener),factory.getWorkDir(),
+                            factory.newProcess(listener,out),out);
+                    LOGGER.fine("Launched an idle maven process on "+node.getDisplayName());
+                    p.park();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING,"Failed to launch an idle maven process on "+node.getDisplayName(),e);
+                    break;
+                } catch (InterruptedException e) {
+                    LOGGER.log(Level.WARNING,"Interrupted while launching an idle maven process on "+node.getDisplayName(),e);
+                    return;
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING,"Failed to launch an idle maven process on "+node.getDisplayName(),e);
+                    break;
+                }
+            }
+        }
     }
 
     /**
-     * Noop callable used for checking the sanity of the maven process in the cache.
+     * The environment of a process launched outside of a build: that of the node,
+     * with the variables configured for all nodes and for this one.
      */
-    private static class SetSystemProperties implements Callable<Object,RuntimeException> {
-        private final Properties properties;
+    private static EnvVars getEnvironment(Node node, Computer computer) throws IOException, InterruptedException {
+        EnvVars env = new EnvVars(computer.getEnvironment());
+        for (NodeProperty<?> p : Hudson.getInstance().getGlobalNodeProperties())
+            if(p instanceof EnvironmentVariablesNodeProperty)
+                env.putAll(((EnvironmentVariablesNodeProperty)p).getEnvVars());
+        for (NodeProperty<?> p : node.getNodeProperties())
+            if(p instanceof EnvironmentVariablesNodeProperty)
+                env.putAll(((EnvironmentVariablesNodeProperty)p).getEnvVars());
+        return env;
+    }
 
-        public SetSystemProperties(Properties properties) {
-            this.properties = properties;
+    /**
+     * Discards the processes that have been idle for longer than {@link #IDLE_TIMEOUT}.
+     */
+    void evictIdleProcesses() {
+        List<PerChannel> lists;
+        synchronized(this) {
+            lists = new ArrayList<PerChannel>(cache.values());
         }
+        long now = System.currentTimeMillis();
+        for (PerChannel list : lists) {
+            for (MavenProcess p : list.processes) {
+                if(p.isIdleTooLong(now) && list.processes.remove(p))
+                    p.close();
+            }
+        }
+    }
 
-        public Object call() {
-            System.setProperties(properties);
-            return null;
+    /**
+     * Guesses how much memory (in MB) a Maven JVM launched with the given options will take.
+     */
+    static long estimateMemory(String mavenOpts) {
+        Matcher m = XMX.matcher(Util.fixNull(mavenOpts));
+        long mb = DEFAULT_PROCESS_MEMORY;
+        while(m.find()) {// the last one wins, like the JVM does
+            long n = Long.parseLong(m.group(1));
+            String unit = m.group(2);
+            if(unit.equalsIgnoreCase("g"))          mb = n*1024;
+            else if(unit.equalsIgnoreCase("m"))     mb = n;
+            else if(unit.equalsIgnoreCase("k"))     mb = n/1024;
+            else                                    mb = n/(1024*1024);
         }
-        private static final long serialVersionUID = 1L;
+        return mb;
+    }
+
+    private static final Pattern XMX = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
+
+    private static boolean sameTool(ToolInstallation a, ToolInstallation b) {
+        if(a==b)    return true;
+        if(a==null || b==null)  return false;
+        return a.getName().equals(b.getName()) && Util.fixNull(a.getHome()).equals(Util.fixNull(b.getHome()));
     }
 
-    private static class GetSystemProperties implements Callable<Properties,RuntimeException> {
-        public Properties call() {
-            return System.getProperties();
+    /**
+     * Periodically discards the cached processes that have been idle for too long.
+     */
+    @Extension
+    public static final class IdleProcessReaper extends PeriodicWork {
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        protected void doRun() {
+            MavenBuild.mavenProcessCache.evictIdleProcesses();
         }
-        private static final long serialVersionUID = 1L;
     }
 
+    /**
+     * Hard upper bound of the number of builds a process is used for.
+     * Processes normally retire earlier, when {@link ProcessRetirementPolicy} finds them unhealthy.
+     */
+    public static int MAX_AGE = 100;
+
+    static {
+        String age = System.getProperty(ProcessCache.class.getName() + ".age");
+        if(age!=null)
+            MAX_AGE = Integer.parseInt(age);
+    }
+
+    /**
+     * Number of idle Maven processes to keep ready per kind of process (Maven installation, JDK, MAVEN_OPTS and working directory)
+     * recently used on a node. 0 disables the warm pool.
+     */
+    public static int WARM_POOL_SIZE = Integer.getInteger(ProcessCache.class.getName()+".warmPoolSize",0);
+
+    /**
+     * Idle processes older than this (in milliseconds) are discarded.
+     */
+    public static long IDLE_TIMEOUT = Long.getLong(ProcessCache.class.getName()+".idleTimeout",TimeUnit.MINUTES.toMillis(30));
+
+    /**
+     * Upper bound (in MB) of the memory the idle processes of a single node may use, as estimated from <tt>-Xmx</tt>.
+     */
+    public static long MEMORY_BUDGET = Long.getLong(ProcessCache.class.getName()+".memoryBudget",1024);
+
+    /**
+     * Memory (in MB) assumed for a process whose MAVEN_OPTS doesn't specify <tt>-Xmx</tt>.
+     */
+    public static long DEFAULT_PROCESS_MEMORY = 256;
+
     static class RedirectableOutputStream extends DelegatingOutputStream {
         public RedirectableOutputStream(OutputStream out) {
             super(out);
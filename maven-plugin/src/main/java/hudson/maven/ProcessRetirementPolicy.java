@@ -0,0 +1,153 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.remoting.Callable;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Decides whether a Maven process that just finished a build is healthy enough
+ * to be put back into the {@link ProcessCache}.
+ *
+ * <p>
+ * Instead of retiring a process after a fixed number of builds, we look at how much
+ * of the heap survives a GC, how full the permanent generation (or metaspace) is,
+ * and how many classes and threads the JVM accumulated since its first build.
+ * Thresholds are configurable via system properties.
+ *
+ * @see ProcessCache.MavenProcess#recycle()
+ */
+final class ProcessRetirementPolicy {
+    private ProcessRetirementPolicy() {}
+
+    /**
+     * Resource usage of a Maven JVM at a point in time.
+     */
+    static final class Sample implements Serializable {
+        /**
+         * Heap in use right after the last GC, in bytes. -1 if unknown.
+         */
+        long heapUsedAfterGC = -1;
+        /**
+         * Maximum heap size in bytes. -1 if undefined.
+         */
+        long heapMax = -1;
+        /**
+         * Usage of the permanent generation or metaspace in bytes.
+         */
+        long permUsed;
+        /**
+         * Maximum of the permanent generation or metaspace in bytes. -1 if undefined.
+         */
+        long permMax = -1;
+        int loadedClasses;
+        int threads;
+
+        @Override
+        public String toString() {
+            return "heapAfterGC="+mb(heapUsedAfterGC)+"/"+mb(heapMax)+"MB perm="+mb(permUsed)+"/"+mb(permMax)
+                    +"MB classes="+loadedClasses+" threads="+threads;
+        }
+
+        private static long mb(long bytes) {
+            return bytes<0 ? bytes : bytes/(1024*1024);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Takes a {@link Sample} inside the Maven JVM.
+     */
+    static final class Sampler implements Callable<Sample,RuntimeException> {
+        public Sample call() {
+            Sample s = new Sample();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if(pool.getType()==MemoryType.HEAP) {
+                    MemoryUsage u = pool.getCollectionUsage();
+                    if(u!=null)
+                        s.heapUsedAfterGC = Math.max(s.heapUsedAfterGC,0) + u.getUsed();
+                } else {
+                    String name = pool.getName();
+                    if(name.contains("Perm") || name.contains("Metaspace")) {
+                        MemoryUsage u = pool.getUsage();
+                        s.permUsed += u.getUsed();
+                        if(u.getMax()>=0)
+                            s.permMax = Math.max(s.permMax,0) + u.getMax();
+                    }
+                }
+            }
+            s.heapMax = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+            s.loadedClasses = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+            s.threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            return s;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Checks the current resource usage of a process.
+     *
+     * @param baseline
+     *      The sample taken after the first build of the process.
+     * @param current
+     *      The sample taken just now.
+     * @return
+     *      null if the process is healthy, otherwise the human readable reason for retiring it.
+     */
+    static String check(Sample baseline, Sample current) {
+        if(current.heapMax>0 && current.heapUsedAfterGC>=0
+        && current.heapUsedAfterGC > current.heapMax*MAX_HEAP_RATIO)
+            return "heap after GC is at "+percent(current.heapUsedAfterGC,current.heapMax);
+        if(current.permMax>0 && current.permUsed > current.permMax*MAX_PERM_RATIO)
+            return "permanent generation is at "+percent(current.permUsed,current.permMax);
+        if(current.loadedClasses-baseline.loadedClasses > MAX_CLASS_GROWTH)
+            return (current.loadedClasses-baseline.loadedClasses)+" more classes are loaded than after the first build";
+        if(current.threads-baseline.threads > MAX_THREAD_GROWTH)
+            return (current.threads-baseline.threads)+" more threads are running than after the first build";
+        return null;
+    }
+
+    private static String percent(long used, long max) {
+        return (used*100/max)+"%";
+    }
+
+    private static final String PREFIX = ProcessCache.class.getName();
+
+    /**
+     * Retire a process when more than this fraction of the maximum heap survives a GC.
+     */
+    public static double MAX_HEAP_RATIO = Double.parseDouble(System.getProperty(PREFIX+".maxHeapRatio","0.7"));
+
+    /**
+     * Retire a process when its permanent generation (or metaspace, if bounded) is fuller than this fraction.
+     */
+    public static double MAX_PERM_RATIO = Double.parseDouble(System.getProperty(PREFIX+".maxPermRatio","0.8"));
+
+    /**
+     * Retire a process when it has this many more classes loaded than after its first build.
+     */
+    public static int MAX_CLASS_GROWTH = Integer.getInteger(PREFIX+".maxClassGrowth",20000);
+
+    /**
+     * Retire a process when it has this many more live threads than after its first build.
+     */
+    public static int MAX_THREAD_GROWTH = Integer.getInteger(PREFIX+".maxThreadGrowth",50);
+}
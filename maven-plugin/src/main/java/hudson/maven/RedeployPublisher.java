@@ -109,9 +109,9 @@ public class RedeployPublisher extends Recorder {
         }
 
         listener.getLogger().println("Deploying artifacts to "+url);
+        MavenEmbedder embedder = null;
         try {
-            
-            MavenEmbedder embedder = MavenUtil.createEmbedder(listener,build);
+            embedder = MavenUtil.borrowEmbedder(listener,build);
             ArtifactRepositoryLayout layout =
                 (ArtifactRepositoryLayout) embedder.lookup( ArtifactRepositoryLayout.ROLE,"default");
             ArtifactRepositoryFactory factory =
@@ -130,6 +130,9 @@ public class RedeployPublisher extends Recorder {
             e.printStackTrace(listener.error(e.getMessage()));
         } catch (ArtifactDeploymentException e) {
             e.printStackTrace(listener.error(e.getMessage()));
+        } finally {
+            if (embedder!=null)
+                MavenUtil.releaseEmbedder(embedder);
         }
         // failed
         build.setResult(Result.FAILURE);
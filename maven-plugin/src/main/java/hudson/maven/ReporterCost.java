@@ -0,0 +1,110 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one callback of one kind of {@link MavenReporter} cost during a build, summed over all its invocations.
+ *
+ * @see ReporterCostAction
+ */
+public final class ReporterCost implements Serializable {
+    private final String reporter;
+    private final String callback;
+    private int count;
+    /**
+     * Wall time, in microseconds.
+     */
+    private long time;
+    private int roundTrips;
+    private int asyncCalls;
+
+    ReporterCost(String reporter, String callback) {
+        this.reporter = reporter;
+        this.callback = callback;
+    }
+
+    /**
+     * Class name of the reporter.
+     */
+    public String getReporter() {
+        return reporter;
+    }
+
+    /**
+     * Class name of the reporter without the package.
+     */
+    public String getReporterName() {
+        return reporter.substring(reporter.lastIndexOf('.')+1);
+    }
+
+    /**
+     * Name of the {@link MavenReporter} method, such as "postExecute".
+     */
+    public String getCallback() {
+        return callback;
+    }
+
+    /**
+     * Number of times the callback was invoked.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Milliseconds spent in the callback.
+     */
+    public synchronized long getTime() {
+        return TimeUnit.MICROSECONDS.toMillis(time);
+    }
+
+    /**
+     * Number of times the callback waited for the master.
+     */
+    public synchronized int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * Number of {@link MavenBuildProxy.BuildCallable}s the callback sent to the master asynchronously.
+     */
+    public synchronized int getAsyncCalls() {
+        return asyncCalls;
+    }
+
+    synchronized void addInvocation(long nanos) {
+        count++;
+        time += TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    synchronized void addRoundTrip() {
+        roundTrips++;
+    }
+
+    synchronized void addAsyncCall() {
+        asyncCalls++;
+    }
+
+    synchronized void add(ReporterCost that) {
+        this.count += that.getCount();
+        this.time += that.time;
+        this.roundTrips += that.getRoundTrips();
+        this.asyncCalls += that.getAsyncCalls();
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.model.Action;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows what the {@link MavenReporter}s cost during a build, so that expensive ones can be spotted.
+ *
+ * @see ReporterCosts
+ * @see ReporterCostTrendAction
+ */
+public final class ReporterCostAction implements Action {
+    private final List<ReporterCost> costs = new ArrayList<ReporterCost>();
+
+    /**
+     * Merges in more costs, such as those of the {@link MavenReporter#end} callbacks that run on the master.
+     */
+    synchronized void add(Collection<ReporterCost> more) {
+        OUTER:
+        for (ReporterCost c : more) {
+            for (ReporterCost d : costs) {
+                if (d.getReporter().equals(c.getReporter()) && d.getCallback().equals(c.getCallback())) {
+                    d.add(c);
+                    continue OUTER;
+                }
+            }
+            ReporterCost d = new ReporterCost(c.getReporter(),c.getCallback());
+            d.add(c);
+            costs.add(d);
+        }
+    }
+
+    /**
+     * Costs of each callback of each reporter, most expensive first.
+     */
+    public synchronized List<ReporterCost> getCosts() {
+        List<ReporterCost> r = new ArrayList<ReporterCost>(costs);
+        Collections.sort(r,BY_TIME);
+        return r;
+    }
+
+    /**
+     * Costs of each reporter over all its callbacks, most expensive first.
+     */
+    public synchronized List<ReporterCost> getTotals() {
+        Map<String,ReporterCost> totals = new LinkedHashMap<String,ReporterCost>();
+        for (ReporterCost c : costs) {
+            ReporterCost t = totals.get(c.getReporter());
+            if (t==null)
+                totals.put(c.getReporter(), t=new ReporterCost(c.getReporter(),"*"));
+            t.add(c);
+        }
+        List<ReporterCost> r = new ArrayList<ReporterCost>(totals.values());
+        Collections.sort(r,BY_TIME);
+        return r;
+    }
+
+    /**
+     * Milliseconds the given reporter took over all its callbacks.
+     */
+    public synchronized long getTime(String reporter) {
+        long time = 0;
+        for (ReporterCost c : costs)
+            if (c.getReporter().equals(reporter))
+                time += c.getTime();
+        return time;
+    }
+
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.ReporterCostAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "reporterCosts";
+    }
+
+    private static final Comparator<ReporterCost> BY_TIME = new Comparator<ReporterCost>() {
+        public int compare(ReporterCost a, ReporterCost b) {
+            long x = a.getTime(), y = b.getTime();
+            return x>y ? -1 : x<y ? 1 : 0;
+        }
+    };
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.model.Action;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Shows the {@link ReporterCostAction}s of the recent builds of a project side by side,
+ * to tell which reporter made builds slower and when.
+ */
+public final class ReporterCostTrendAction implements Action {
+    public final MavenModuleSet project;
+
+    public ReporterCostTrendAction(MavenModuleSet project) {
+        this.project = project;
+    }
+
+    /**
+     * Those of the recent builds that have their reporter costs recorded, newest first.
+     */
+    public List<MavenModuleSetBuild> getBuilds() {
+        List<MavenModuleSetBuild> r = new ArrayList<MavenModuleSetBuild>();
+        int n = 0;
+        for (MavenModuleSetBuild b = project.getLastBuild(); b!=null && n<MAX_BUILDS; b=b.getPreviousBuild(), n++)
+            if (b.getAction(ReporterCostAction.class)!=null)
+                r.add(b);
+        return r;
+    }
+
+    /**
+     * Class names of all the reporters that appear in {@link #getBuilds()}.
+     */
+    public Set<String> getReporters() {
+        Set<String> r = new TreeSet<String>();
+        for (MavenModuleSetBuild b : getBuilds())
+            for (ReporterCost c : b.getAction(ReporterCostAction.class).getTotals())
+                r.add(c.getReporter());
+        return r;
+    }
+
+    /**
+     * Milliseconds the given reporter took in the given build.
+     */
+    public long getTime(MavenModuleSetBuild build, String reporter) {
+        ReporterCostAction a = build.getAction(ReporterCostAction.class);
+        return a==null ? 0 : a.getTime(reporter);
+    }
+
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.ReporterCostTrendAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "reporterCostTrend";
+    }
+
+    /**
+     * Number of recent builds looked at.
+     */
+    private static final int MAX_BUILDS = 20;
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.maven.MavenBuildProxy.BuildCallable;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the {@link MavenReporter} callbacks of a build, per reporter class and callback.
+ *
+ * <p>
+ * Callers bracket each callback with {@link #begin(MavenReporter, String)} and {@link #end(long)}.
+ * While a callback runs, the calls that the build proxies make to the master on its thread are
+ * attributed to it through {@link #countRoundTrip()} and {@link #countAsyncCall()}.
+ * The result ends up in the {@link ReporterCostAction} of the build.
+ */
+final class ReporterCosts implements Serializable {
+    private final Map<String,ReporterCost> costs = new HashMap<String,ReporterCost>();
+
+    /**
+     * Starts measuring a callback on the current thread.
+     *
+     * @return
+     *      the value to pass to {@link #end(long)}.
+     */
+    long begin(MavenReporter reporter, String callback) {
+        String name = reporter.getClass().getName();
+        String key = name+'#'+callback;
+        ReporterCost c;
+        synchronized (costs) {
+            c = costs.get(key);
+            if (c==null)
+                costs.put(key, c=new ReporterCost(name,callback));
+        }
+        current.set(c);
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the measurement started by {@link #begin(MavenReporter, String)} on the current thread.
+     */
+    void end(long begin) {
+        ReporterCost c = current.get();
+        if (c==null)
+            return;
+        current.remove();
+        c.addInvocation(System.nanoTime()-begin);
+    }
+
+    Collection<ReporterCost> getCosts() {
+        synchronized (costs) {
+            return new ArrayList<ReporterCost>(costs.values());
+        }
+    }
+
+    /**
+     * Adds the costs to the build, through the given proxy.
+     *
+     * @param aggregated
+     *      True to add them to the {@link MavenModuleSetBuild} the module build belongs to.
+     */
+    void record(MavenBuildProxy proxy, boolean aggregated, BuildListener listener) {
+        if (getCosts().isEmpty())
+            return;
+        try {
+            proxy.execute(new RecordTask(this,aggregated));
+        } catch (IOException e) {
+            e.printStackTrace(listener.error("Failed to record the reporter costs"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds the costs to the build. To be called on the master.
+     */
+    void record(AbstractBuild<?,?> build) {
+        if (getCosts().isEmpty())
+            return;
+        synchronized (build) {
+            ReporterCostAction a = build.getAction(ReporterCostAction.class);
+            if (a==null)
+                build.addAction(a=new ReporterCostAction());
+            a.add(getCosts());
+        }
+    }
+
+    /**
+     * Attributes a call that waits for the master to the callback running on the current thread, if any.
+     */
+    static void countRoundTrip() {
+        ReporterCost c = current.get();
+        if (c!=null)
+            c.addRoundTrip();
+    }
+
+    /**
+     * Attributes an asynchronous execution to the callback running on the current thread, if any.
+     */
+    static void countAsyncCall() {
+        ReporterCost c = current.get();
+        if (c!=null)
+            c.addAsyncCall();
+    }
+
+    private static final ThreadLocal<ReporterCost> current = new ThreadLocal<ReporterCost>();
+
+    private static final class RecordTask implements BuildCallable<Void,IOException> {
+        private final ReporterCosts costs;
+        private final boolean aggregated;
+
+        RecordTask(ReporterCosts costs, boolean aggregated) {
+            this.costs = costs;
+            this.aggregated = aggregated;
+        }
+
+        public Void call(MavenBuild build) throws IOException, InterruptedException {
+            AbstractBuild<?,?> b = aggregated ? build.getParentBuild() : build;
+            costs.record(b==null ? build : b);
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -197,8 +197,9 @@ public abstract class MavenAbstractArtifactRecord<T extends AbstractBuild<?,?>>
 
         new TaskThread(this,ListenerAndText.forFile(logFile)) {
             protected void perform(TaskListener listener) throws Exception {
+                MavenEmbedder embedder = null;
                 try {
-                    MavenEmbedder embedder = MavenUtil.createEmbedder(listener,getBuild());
+                    embedder = MavenUtil.borrowEmbedder(listener,getBuild());
                     ArtifactRepositoryLayout layout =
                         (ArtifactRepositoryLayout) embedder.lookup( ArtifactRepositoryLayout.class,"default");
                     ArtifactRepositoryFactory factory =
@@ -211,6 +212,8 @@ public abstract class MavenAbstractArtifactRecord<T extends AbstractBuild<?,?>>
 
                     record.result = Result.SUCCESS;
                 } finally {
+                    if(embedder!=null)
+                        MavenUtil.releaseEmbedder(embedder);
                     if(record.result==null)
                         record.result = Result.FAILURE;
                     // persist the record
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.model.StreamBuildListener;
+import hudson.remoting.Callable;
+import hudson.remoting.Future;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Checks how {@link AsyncCallWindow} throttles, reaps and drains the executions it sends.
+ */
+public class AsyncCallWindowTest extends TestCase {
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    /**
+     * Stands in for an execution on the master, completed by the test.
+     */
+    private static final class Execution extends FutureTask<Object> implements Future<Object> {
+        Execution() {
+            super(new Runnable() {
+                public void run() {
+                }
+            }, null);
+        }
+
+        void fail() {
+            setException(new IllegalStateException("failed on the master"));
+        }
+    }
+
+    /**
+     * Hands out an {@link Execution} for each call instead of talking to the master.
+     */
+    private class LocalWindow extends AsyncCallWindow {
+        final List<Execution> sent = new ArrayList<Execution>();
+
+        LocalWindow(int size) {
+            super(new StreamBuildListener(log), size);
+        }
+
+        @Override
+        Future<?> send(Callable<?,?> call) throws IOException {
+            Execution e = new Execution();
+            synchronized (sent) {
+                sent.add(e);
+            }
+            return e;
+        }
+
+        Execution get(int i) {
+            synchronized (sent) {
+                return sent.get(i);
+            }
+        }
+    }
+
+    public void testPeakDepth() throws Exception {
+        LocalWindow w = new LocalWindow(10);
+        w.submit(null);
+        w.submit(null);
+        w.submit(null);
+        assertEquals(3, w.getStatistics().maxInFlight);
+
+        w.get(0).run();
+        w.get(1).run();
+        w.submit(null);
+        // two were reaped, so the window is back to two deep
+        assertEquals(4, w.getStatistics().submitted);
+        assertEquals(3, w.getStatistics().maxInFlight);
+        assertEquals(0, w.getStatistics().throttled);
+    }
+
+    public void testFullWindowWaitsForTheOldest() throws Exception {
+        final LocalWindow w = new LocalWindow(2);
+        w.submit(null);
+        w.submit(null);
+
+        final Throwable[] failure = new Throwable[1];
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    w.submit(null);
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        t.start();
+        t.join(200);
+        assertTrue(t.isAlive());
+
+        // only the oldest one makes room
+        w.get(1).run();
+        t.join(200);
+        assertTrue(t.isAlive());
+
+        w.get(0).run();
+        t.join(10000);
+        assertFalse(t.isAlive());
+        assertNull(failure[0]);
+
+        assertEquals(3, w.getStatistics().submitted);
+        assertEquals(2, w.getStatistics().maxInFlight);
+        assertEquals(1, w.getStatistics().throttled);
+    }
+
+    public void testFailuresAreReportedWhenReaped() throws Exception {
+        LocalWindow w = new LocalWindow(10);
+        w.submit(null);
+        w.get(0).fail();
+        assertFalse(log.toString().contains("failed on the master"));
+
+        w.submit(null);
+        assertTrue(log.toString(), log.toString().contains("failed on the master"));
+    }
+
+    public void testDrainWaitsForAll() throws Exception {
+        final LocalWindow w = new LocalWindow(10);
+        w.submit(null);
+        w.submit(null);
+        w.get(0).run();
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    w.drain();
+                } catch (InterruptedException e) {
+                    // the test fails below
+                }
+            }
+        };
+        t.start();
+        t.join(200);
+        assertTrue(t.isAlive());
+
+        w.get(1).run();
+        t.join(10000);
+        assertFalse(t.isAlive());
+    }
+
+    public void testInterruptedDrainCancels() throws Exception {
+        LocalWindow w = new LocalWindow(10);
+        w.submit(null);
+
+        Thread.currentThread().interrupt();
+        try {
+            w.drain();
+            fail();
+        } catch (InterruptedException e) {
+            // expected
+        }
+        assertTrue(w.get(0).isCancelled());
+    }
+}
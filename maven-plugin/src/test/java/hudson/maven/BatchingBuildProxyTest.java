@@ -0,0 +1,223 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.maven.MavenBuildProxy.BuildCallable;
+import hudson.model.Result;
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that {@link BatchingBuildProxy} gets the calls on each module to the master in the order they were made.
+ */
+public class BatchingBuildProxyTest extends TestCase {
+    /**
+     * What the master got to see, in order.
+     */
+    private final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Stands in for the proxy exported from the master, and for the filter in front of it.
+     */
+    private MavenBuildProxy2 target(final String name) {
+        return (MavenBuildProxy2)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MavenBuildProxy2.class},
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String s = name+"."+method.getName();
+                    if (method.getName().equals("setExecutedMojos"))
+                        s += ":"+((List)args[0]).size();
+                    log.add(s);
+                    return method.getReturnType()==boolean.class ? Boolean.FALSE : null;
+                }
+            });
+    }
+
+    /**
+     * Runs each batch right away, as the master would.
+     */
+    private class LocalBatch extends BatchingBuildProxy.Batch {
+        int batches;
+
+        LocalBatch() {
+            super(null, null);
+        }
+
+        @Override
+        Object send(BatchingBuildProxy.Invoker invoker) throws Throwable {
+            batches++;
+            return invoker.call();
+        }
+    }
+
+    private static List<ExecutedMojo> mojos(int n) {
+        return Arrays.asList(new ExecutedMojo[n]);
+    }
+
+    public void testQueuedCallsGoWithTheNextBlockingCall() throws Exception {
+        LocalBatch batch = new LocalBatch();
+        MavenBuildProxy2 a = new BatchingBuildProxy(target("core"), target("a"), batch);
+
+        a.setResult(Result.UNSTABLE);
+        a.registerAsProjectAction((MavenReporter)null);
+        assertTrue(log.isEmpty());
+        assertEquals(0, batch.batches);
+
+        a.start();
+        assertEquals(Arrays.asList("a.setResult", "a.registerAsProjectAction", "a.start"), log);
+        assertEquals(1, batch.batches);
+    }
+
+    public void testOnlyTheLastMojoListOfEachModuleIsSent() throws Exception {
+        LocalBatch batch = new LocalBatch();
+        MavenBuildProxy2 a = new BatchingBuildProxy(target("core"), target("a"), batch);
+        MavenBuildProxy2 b = new BatchingBuildProxy(target("core"), target("b"), batch);
+
+        a.setExecutedMojos(mojos(1));
+        b.setExecutedMojos(mojos(1));
+        a.setExecutedMojos(mojos(2));
+        a.setResult(Result.SUCCESS);
+        a.setExecutedMojos(mojos(3));
+        batch.flush();
+
+        assertEquals(Arrays.asList("b.setExecutedMojos:1", "a.setResult", "a.setExecutedMojos:3"), log);
+    }
+
+    public void testTheListIsCopiedWhenQueued() throws Exception {
+        LocalBatch batch = new LocalBatch();
+        MavenBuildProxy2 a = new BatchingBuildProxy(target("core"), target("a"), batch);
+
+        List<ExecutedMojo> mojos = new ArrayList<ExecutedMojo>();
+        a.setExecutedMojos(mojos);
+        mojos.add(null);
+        a.end();
+
+        assertEquals(Arrays.asList("a.setExecutedMojos:0", "a.end"), log);
+    }
+
+    public void testFlushWithNothingQueuedDoesNotTalkToTheMaster() throws Exception {
+        LocalBatch batch = new LocalBatch();
+        batch.flush();
+        assertEquals(0, batch.batches);
+    }
+
+    public void testAsyncExecutionSeesTheQueuedCalls() throws Exception {
+        LocalBatch batch = new LocalBatch();
+        MavenBuildProxy2 a = new BatchingBuildProxy(target("core"), target("a"), batch);
+
+        a.setResult(Result.FAILURE);
+        a.executeAsync((BuildCallable<?,?>)null);
+
+        assertEquals(Arrays.asList("a.setResult", "core.executeAsync"), log);
+    }
+
+    public void testFailureOfAQueuedCallDoesNotFailTheBlockingOne() throws Exception {
+        LocalBatch batch = new LocalBatch();
+        MavenBuildProxy2 failing = (MavenBuildProxy2)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MavenBuildProxy2.class},
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    throw new IllegalStateException();
+                }
+            });
+        new BatchingBuildProxy(target("core"), failing, batch).setResult(Result.FAILURE);
+        new BatchingBuildProxy(target("core"), target("a"), batch).start();
+
+        assertEquals(Arrays.asList("a.start"), log);
+    }
+
+    public void testBatchesDoNotOvertakeEachOther() throws Exception {
+        final CountDownLatch firstSent = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LocalBatch batch = new LocalBatch() {
+            @Override
+            Object send(BatchingBuildProxy.Invoker invoker) throws Throwable {
+                if (batches==0) {
+                    batches++;
+                    firstSent.countDown();
+                    release.await();
+                    return invoker.call();
+                }
+                return super.send(invoker);
+            }
+        };
+        final MavenBuildProxy2 a = new BatchingBuildProxy(target("core"), target("a"), batch);
+        final MavenBuildProxy2 b = new BatchingBuildProxy(target("core"), target("b"), batch);
+
+        a.setExecutedMojos(mojos(1));
+        Thread t1 = new Thread() {
+            public void run() {
+                b.start();
+            }
+        };
+        t1.start();
+        assertTrue(firstSent.await(10, TimeUnit.SECONDS));
+
+        // the first batch carries a's mojos. a's end must not reach the master before them.
+        Thread t2 = new Thread() {
+            public void run() {
+                a.end();
+            }
+        };
+        t2.start();
+        t2.join(200);
+        assertTrue(log.isEmpty());
+
+        release.countDown();
+        t1.join();
+        t2.join();
+        assertEquals(Arrays.asList("a.setExecutedMojos:1", "b.start", "a.end"), log);
+    }
+
+    public void testBatchesOfOtherModulesAreNotHeldUp() throws Exception {
+        final CountDownLatch firstSent = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LocalBatch batch = new LocalBatch() {
+            @Override
+            Object send(BatchingBuildProxy.Invoker invoker) throws Throwable {
+                if (firstSent.getCount()>0) {
+                    firstSent.countDown();
+                    release.await();
+                }
+                return invoker.call();
+            }
+        };
+        final MavenBuildProxy2 a = new BatchingBuildProxy(target("core"), target("a"), batch);
+        final MavenBuildProxy2 b = new BatchingBuildProxy(target("core"), target("b"), batch);
+
+        Thread t1 = new Thread() {
+            public void run() {
+                b.start();
+            }
+        };
+        t1.start();
+        assertTrue(firstSent.await(10, TimeUnit.SECONDS));
+
+        // b's batch is still on its way, but has nothing for a
+        a.setResult(Result.SUCCESS);
+        a.end();
+        assertEquals(Arrays.asList("a.setResult", "a.end"), log);
+
+        release.countDown();
+        t1.join();
+        assertEquals(Arrays.asList("a.setResult", "a.end", "b.start"), log);
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.Util;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Checks when {@link ExecutedMojo} recomputes the digest of a plugin jar.
+ */
+public class ExecutedMojoTest extends TestCase {
+    private File jar;
+
+    @Override
+    protected void setUp() throws Exception {
+        jar = File.createTempFile("plugin", ".jar");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        jar.delete();
+    }
+
+    private void write(String content, long timestamp) throws IOException {
+        FileOutputStream out = new FileOutputStream(jar);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertTrue(jar.setLastModified(timestamp));
+    }
+
+    private static String md5(String content) throws IOException {
+        return Util.getDigestOf(new ByteArrayInputStream(content.getBytes("UTF-8")));
+    }
+
+    public void testSameJarIsDigestedOnce() throws Exception {
+        write("abcd", 100000L);
+        String digest = ExecutedMojo.getDigestOf(jar);
+
+        // same size and timestamp, so the cached digest is returned
+        write("efgh", 100000L);
+        assertEquals(digest, ExecutedMojo.getDigestOf(jar));
+    }
+
+    public void testChangedTimestamp() throws Exception {
+        write("abcd", 100000L);
+        String digest = ExecutedMojo.getDigestOf(jar);
+
+        write("efgh", 200000L);
+        String changed = ExecutedMojo.getDigestOf(jar);
+        assertFalse(digest.equals(changed));
+        assertEquals(md5("efgh"), changed);
+    }
+
+    public void testChangedSize() throws Exception {
+        write("abcd", 100000L);
+        String digest = ExecutedMojo.getDigestOf(jar);
+
+        write("abcde", 100000L);
+        String changed = ExecutedMojo.getDigestOf(jar);
+        assertFalse(digest.equals(changed));
+        assertEquals(md5("abcde"), changed);
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Checks that {@link ExecutionTimeline#writeTraceEvents(File, Writer)} produces valid JSON
+ * whatever the names in the timeline contain.
+ */
+public class ExecutionTimelineTest extends TestCase {
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("timeline", ".txt");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private void write(String content) throws IOException {
+        Writer w = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+
+    private String traceEvents() throws IOException {
+        StringWriter w = new StringWriter();
+        ExecutionTimeline.writeTraceEvents(file, w);
+        return w.toString();
+    }
+
+    public void testEmpty() throws Exception {
+        write("1000\n");
+        assertEquals("{\"otherData\":{\"startTime\":1000},\"displayTimeUnit\":\"ms\",\"traceEvents\":[]}", traceEvents());
+    }
+
+    public void testEvents() throws Exception {
+        write("1000\n"
+            + "thread\t1\t0\t0\tmain\n"
+            + "mojo\t1\t5\t10\tcompiler:compile\n");
+        assertEquals("{\"otherData\":{\"startTime\":1000},\"displayTimeUnit\":\"ms\",\"traceEvents\":["
+            + "{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\"main\"}},\n"
+            + "{\"ph\":\"X\",\"cat\":\"mojo\",\"name\":\"compiler:compile\",\"pid\":1,\"tid\":1,\"ts\":5,\"dur\":10}]}",
+            traceEvents());
+    }
+
+    public void testEscaping() throws Exception {
+        write("1000\n"
+            + "thread\t1\t0\t0\tpool \"1\"\n"
+            + "mojo\t1\t5\t10\tC:\\work\\pom.xml \u0001 \u00e9\n");
+        String json = traceEvents();
+        assertTrue(json, json.contains("\"name\":\"pool \\\"1\\\"\""));
+        assertTrue(json, json.contains("\"name\":\"C:\\\\work\\\\pom.xml \\u0001 \u00e9\""));
+    }
+
+    public void testIncompleteLinesAreSkipped() throws Exception {
+        write("1000\n"
+            + "mojo\t1\t5\n"
+            + "mojo\t1\t5\t10\tcompiler:compile\n");
+        String json = traceEvents();
+        assertTrue(json, json.endsWith("[{\"ph\":\"X\",\"cat\":\"mojo\",\"name\":\"compiler:compile\",\"pid\":1,\"tid\":1,\"ts\":5,\"dur\":10}]}"));
+    }
+
+    /**
+     * Names with line separators in them must not break the lines of the saved timeline.
+     */
+    public void testLineSeparatorsInNames() throws Exception {
+        ExecutionTimeline timeline = new ExecutionTimeline();
+        timeline.end("mojo", "a\tb\nc\rd", timeline.begin());
+        timeline.save(file);
+        String json = traceEvents();
+        assertTrue(json, json.contains("\"name\":\"a b c d\""));
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that {@link ModuleDependencyIndex} follows modules as they are updated, removed and renamed.
+ */
+public class ModuleDependencyIndexTest extends TestCase {
+    /**
+     * Stands in for {@link MavenModule}, which needs a running Hudson.
+     */
+    private static final class Module implements ModuleDependencyIndex.Indexed {
+        ModuleDependency dependency;
+        String name;
+        boolean disabled;
+
+        Module(ModuleDependency dependency, String name) {
+            this.dependency = dependency;
+            this.name = name;
+        }
+
+        public ModuleDependency asDependency() {
+            return dependency;
+        }
+
+        public String getFullName() {
+            return name;
+        }
+
+        public MavenModuleSet getParent() {
+            return null;
+        }
+
+        public boolean isDisabled() {
+            return disabled;
+        }
+    }
+
+    private final List<Module> modules = new ArrayList<Module>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        // the index is shared by the whole JVM
+        for (Module m : modules)
+            ModuleDependencyIndex.remove(m);
+    }
+
+    /**
+     * Coordinates unique to the running test.
+     */
+    private ModuleDependency dep(String artifactId, String version) {
+        return new ModuleDependency(getName(), artifactId, version);
+    }
+
+    private Module register(ModuleDependency d, String name) {
+        Module m = new Module(d, getName()+"/"+name);
+        modules.add(m);
+        ModuleDependencyIndex.update(m);
+        return m;
+    }
+
+    private static ModuleDependencyIndex.Indexed find(ModuleDependency d) {
+        return ModuleDependencyIndex.find(d, null);
+    }
+
+    public void testFind() {
+        Module m = register(dep("a","1.0"), "p/a");
+        assertSame(m, find(dep("a","1.0")));
+        // dependencies recorded without a version match any version
+        assertSame(m, find(dep("a",null)));
+        assertNull(find(dep("a","2.0")));
+        assertNull(find(dep("b","1.0")));
+    }
+
+    public void testUpdateCoordinates() {
+        Module m = register(dep("a","1.0"), "p/a");
+        m.dependency = dep("a","2.0");
+        ModuleDependencyIndex.update(m);
+        assertNull(find(dep("a","1.0")));
+        assertSame(m, find(dep("a","2.0")));
+    }
+
+    public void testRemove() {
+        Module m = register(dep("a","1.0"), "p/a");
+        ModuleDependencyIndex.remove(m);
+        assertNull(find(dep("a","1.0")));
+        assertNull(find(dep("a",null)));
+        // removing twice is harmless
+        ModuleDependencyIndex.remove(m);
+    }
+
+    public void testDisabledIsSkipped() {
+        Module m1 = register(dep("a","1.0"), "p/a");
+        Module m2 = register(dep("a","1.0"), "q/a");
+        // neither has a parent, so both are in the preferred project and the first one wins
+        assertSame(m1, find(dep("a","1.0")));
+        m1.disabled = true;
+        assertSame(m2, find(dep("a","1.0")));
+        m2.disabled = true;
+        assertNull(find(dep("a","1.0")));
+    }
+
+    public void testReloadReplacesEarlierInstance() {
+        Module m1 = register(dep("a","1.0"), "p/a");
+        Module m2 = register(dep("a","1.0"), "p/a");
+        assertSame(m2, find(dep("a","1.0")));
+        m2.disabled = true;
+        // m1 is gone, rather than being the fallback
+        assertNull(find(dep("a","1.0")));
+        // and unregistering it doesn't affect its replacement
+        ModuleDependencyIndex.remove(m1);
+        m2.disabled = false;
+        assertSame(m2, find(dep("a","1.0")));
+    }
+
+    public void testRename() {
+        Module m1 = register(dep("a","1.0"), "p/a");
+        m1.name = getName()+"/q/a";
+        ModuleDependencyIndex.update(m1);
+
+        // a different module that now takes the old name doesn't replace the renamed one
+        Module m2 = register(dep("b","1.0"), "p/a");
+        assertSame(m1, find(dep("a","1.0")));
+        assertSame(m2, find(dep("b","1.0")));
+
+        // but a reloaded instance under the new name does
+        Module m3 = register(dep("a","1.0"), "q/a");
+        m3.disabled = true;
+        assertNull(find(dep("a","1.0")));
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Checks when {@link PomInfoCache} considers the files a parse depended on to have changed.
+ */
+public class PomInfoCacheTest extends TestCase {
+    private File pom;
+    private String key;
+
+    @Override
+    protected void setUp() throws Exception {
+        pom = File.createTempFile("pom", ".xml");
+        // the cache is shared by the whole JVM
+        key = getName()+pom.getName();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pom.delete();
+    }
+
+    private void write(File f, String content, long timestamp) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertTrue(f.setLastModified(timestamp));
+    }
+
+    private void put(File f) {
+        PomInfoCache.put(key, Collections.singleton(f), new ArrayList<PomInfo>());
+    }
+
+    public void testUnchanged() throws Exception {
+        write(pom, "<project/>", 100000L);
+        put(pom);
+        assertNotNull(PomInfoCache.get(key));
+    }
+
+    public void testUnknownKey() {
+        assertNull(PomInfoCache.get(key));
+    }
+
+    public void testChangedSize() throws Exception {
+        write(pom, "<project/>", 100000L);
+        put(pom);
+        write(pom, "<project></project>", 100000L);
+        assertNull(PomInfoCache.get(key));
+    }
+
+    public void testTouchedButSameContent() throws Exception {
+        write(pom, "<project/>", 100000L);
+        put(pom);
+        // as after a fresh checkout
+        write(pom, "<project/>", 200000L);
+        assertNotNull(PomInfoCache.get(key));
+    }
+
+    public void testChangedContentOfSameSize() throws Exception {
+        write(pom, "<project/>", 100000L);
+        put(pom);
+        write(pom, "<PROJECT/>", 200000L);
+        assertNull(PomInfoCache.get(key));
+    }
+
+    public void testDeleted() throws Exception {
+        write(pom, "<project/>", 100000L);
+        put(pom);
+        assertTrue(pom.delete());
+        assertNull(PomInfoCache.get(key));
+    }
+
+    public void testCreated() throws Exception {
+        assertTrue(pom.delete());
+        put(pom);
+        assertNotNull(PomInfoCache.get(key));
+        write(pom, "<project/>", 100000L);
+        assertNull(PomInfoCache.get(key));
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2004-2011 Oracle Corporation.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *
+ *******************************************************************************/
+
+package hudson.maven;
+
+import hudson.maven.ProcessRetirementPolicy.Sample;
+import junit.framework.TestCase;
+
+/**
+ * Checks the thresholds of {@link ProcessRetirementPolicy#check(Sample, Sample)}.
+ */
+public class ProcessRetirementPolicyTest extends TestCase {
+    private static final long MB = 1024*1024;
+
+    private static Sample sample(long heapUsedAfterGC, long heapMax, long permUsed, long permMax, int classes, int threads) {
+        Sample s = new Sample();
+        s.heapUsedAfterGC = heapUsedAfterGC;
+        s.heapMax = heapMax;
+        s.permUsed = permUsed;
+        s.permMax = permMax;
+        s.loadedClasses = classes;
+        s.threads = threads;
+        return s;
+    }
+
+    private final Sample baseline = sample(100*MB, 1000*MB, 30*MB, 100*MB, 5000, 20);
+
+    public void testHealthy() {
+        assertNull(ProcessRetirementPolicy.check(baseline, baseline));
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(200*MB, 1000*MB, 40*MB, 100*MB, 6000, 25)));
+    }
+
+    public void testHeap() {
+        long limit = (long)(1000*MB*ProcessRetirementPolicy.MAX_HEAP_RATIO);
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(limit, 1000*MB, 30*MB, 100*MB, 5000, 20)));
+        String reason = ProcessRetirementPolicy.check(baseline, sample(limit+MB, 1000*MB, 30*MB, 100*MB, 5000, 20));
+        assertNotNull(reason);
+        assertTrue(reason, reason.startsWith("heap"));
+    }
+
+    public void testUnknownHeapIsIgnored() {
+        // no GC yet, or no maximum
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(-1, 1000*MB, 30*MB, 100*MB, 5000, 20)));
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(1000*MB, -1, 30*MB, 100*MB, 5000, 20)));
+    }
+
+    public void testPermGen() {
+        long limit = (long)(100*MB*ProcessRetirementPolicy.MAX_PERM_RATIO);
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(100*MB, 1000*MB, limit, 100*MB, 5000, 20)));
+        String reason = ProcessRetirementPolicy.check(baseline, sample(100*MB, 1000*MB, limit+MB, 100*MB, 5000, 20));
+        assertNotNull(reason);
+        assertTrue(reason, reason.startsWith("permanent generation"));
+    }
+
+    public void testUnboundedMetaspaceIsIgnored() {
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(100*MB, 1000*MB, 500*MB, -1, 5000, 20)));
+    }
+
+    public void testClassGrowth() {
+        int limit = baseline.loadedClasses+ProcessRetirementPolicy.MAX_CLASS_GROWTH;
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(100*MB, 1000*MB, 30*MB, 100*MB, limit, 20)));
+        String reason = ProcessRetirementPolicy.check(baseline, sample(100*MB, 1000*MB, 30*MB, 100*MB, limit+1, 20));
+        assertNotNull(reason);
+        assertTrue(reason, reason.contains("classes"));
+    }
+
+    public void testThreadGrowth() {
+        int limit = baseline.threads+ProcessRetirementPolicy.MAX_THREAD_GROWTH;
+        assertNull(ProcessRetirementPolicy.check(baseline, sample(100*MB, 1000*MB, 30*MB, 100*MB, 5000, limit)));
+        String reason = ProcessRetirementPolicy.check(baseline, sample(100*MB, 1000*MB, 30*MB, 100*MB, 5000, limit+1));
+        assertNotNull(reason);
+        assertTrue(reason, reason.contains("threads"));
+    }
+}
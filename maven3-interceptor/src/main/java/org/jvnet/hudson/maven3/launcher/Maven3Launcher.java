@@ -20,13 +20,20 @@ package org.jvnet.hudson.maven3.launcher;
  * under the License.
  */
 
+import java.util.List;
+
 import org.apache.maven.Maven;
+import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.cli.MavenExecutionRequestBuilder;
 import org.apache.maven.cli.MavenLoggerManager;
 import org.apache.maven.cli.PrintStreamLogger;
 import org.apache.maven.execution.ExecutionListener;
 import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Extension;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.ContainerConfiguration;
 import org.codehaus.plexus.DefaultContainerConfiguration;
 import org.codehaus.plexus.DefaultPlexusContainer;
@@ -44,6 +51,31 @@ public class Maven3Launcher {
 
     private static ExecutionListener mavenExecutionListener;
 
+    /**
+     * If true, the Plexus container and the components looked up from it survive
+     * the end of a build, so that the next build in this JVM skips the component discovery
+     * and keeps the plugin descriptor and realm caches warm.
+     *
+     * <p>
+     * Those caches are keyed by version, so a plugin or extension that changes without
+     * changing its version would keep its old classes. The container is therefore not kept
+     * after a build that used a SNAPSHOT plugin or extension, or a plugin with a SNAPSHOT dependency.
+     */
+    private static boolean reuseContainer;
+
+    /**
+     * Container kept from the previous build when {@link #reuseContainer} is on.
+     */
+    private static DefaultPlexusContainer container;
+
+    /**
+     * The logger that every component of {@link #container} got injected. It stays the same
+     * for the life of the container, and is pointed at the output and the threshold of each build.
+     */
+    private static PrintStreamLogger logger;
+
+    private static Maven maven;
+
     public static ExecutionListener getMavenExecutionListener() {
         return mavenExecutionListener;
     }
@@ -60,34 +92,103 @@ public class Maven3Launcher {
         hudsonMavenExecutionResult = result;
     }
 
+    public static boolean isReuseContainer() {
+        return reuseContainer;
+    }
+
+    public static void setReuseContainer( boolean reuse ) {
+        reuseContainer = reuse;
+    }
+
     public static int main( String[] args ) throws Exception {
         ClassLoader orig = Thread.currentThread().getContextClassLoader();
+        boolean keepContainer = false;
         try {
 
             ClassRealm containerRealm = (ClassRealm) Thread.currentThread().getContextClassLoader();
 
-            ContainerConfiguration cc = new DefaultContainerConfiguration().setName( "maven" )
-                .setRealm( containerRealm );
+            if ( container != null && ( !reuseContainer || container.getContainerRealm() != containerRealm ) ) {
+                disposeContainer();
+            }
 
-            DefaultPlexusContainer container = new DefaultPlexusContainer( cc );
-            MavenLoggerManager mavenLoggerManager = new MavenLoggerManager( new PrintStreamLogger( System.out ) );
-            container.setLoggerManager( mavenLoggerManager );
-            
-            Maven maven = (Maven) container.lookup( "org.apache.maven.Maven", "default" );
+            if ( container == null ) {
+                ContainerConfiguration cc = new DefaultContainerConfiguration().setName( "maven" )
+                    .setRealm( containerRealm );
+
+                container = new DefaultPlexusContainer( cc );
+                logger = new PrintStreamLogger( System.out );
+                container.setLoggerManager( new MavenLoggerManager( logger ) );
+            }
+
+            // the logger has to follow System.out, which belongs to the current build
+            logger.setStream( System.out );
+
+            if ( maven == null ) {
+                maven = (Maven) container.lookup( "org.apache.maven.Maven", "default" );
+            }
             MavenExecutionRequest request = getMavenExecutionRequest( args, container );
+            logger.setThreshold( request.getLoggingLevel() );
 
             MavenExecutionResult result = maven.execute( request );
             hudsonMavenExecutionResult = new HudsonMavenExecutionResult( result );
+            // the classes of a rebuilt SNAPSHOT would be served from the realm caches of this container
+            keepContainer = reuseContainer && !usesSnapshotPlugins( result );
             
             // we don't care about cli mavenExecutionResult will be study in the the plugin
             return 0;// cli.doMain( args, null );
         } catch ( ComponentLookupException e ) {
             throw new Exception( e.getMessage(), e );
         } finally {
+            // a container that blew up half way is not trusted for the next build
+            if ( !keepContainer ) {
+                disposeContainer();
+            }
             Thread.currentThread().setContextClassLoader( orig );
         }
     }
 
+    /**
+     * Disposes the container kept from a previous build, if any.
+     */
+    public static void disposeContainer() {
+        DefaultPlexusContainer c = container;
+        container = null;
+        logger = null;
+        maven = null;
+        if ( c != null ) {
+            c.dispose();
+        }
+    }
+
+    /**
+     * Checks if the build used a plugin or an extension that can change without changing its version.
+     */
+    private static boolean usesSnapshotPlugins( MavenExecutionResult result ) {
+        List<MavenProject> projects = result.getTopologicallySortedProjects();
+        if ( projects == null ) {
+            // we can't tell
+            return true;
+        }
+        for ( MavenProject project : projects ) {
+            for ( Plugin plugin : project.getBuildPlugins() ) {
+                if ( ArtifactUtils.isSnapshot( plugin.getVersion() ) ) {
+                    return true;
+                }
+                for ( Dependency dependency : plugin.getDependencies() ) {
+                    if ( ArtifactUtils.isSnapshot( dependency.getVersion() ) ) {
+                        return true;
+                    }
+                }
+            }
+            for ( Extension extension : project.getBuildExtensions() ) {
+                if ( ArtifactUtils.isSnapshot( extension.getVersion() ) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private static MavenExecutionRequest getMavenExecutionRequest( String[] args, DefaultPlexusContainer container ) throws Exception {
         MavenExecutionRequestBuilder mavenExecutionRequestBuilder = container
             .lookup( MavenExecutionRequestBuilder.class );